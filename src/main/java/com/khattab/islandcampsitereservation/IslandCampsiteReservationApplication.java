@@ -1,20 +1,14 @@
 package com.khattab.islandcampsitereservation;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class IslandCampsiteReservationApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(IslandCampsiteReservationApplication.class, args);
 	}
-
-	@Bean
-	public ModelMapper getModelMapper() {
-		return new ModelMapper();
-	}
-
 }
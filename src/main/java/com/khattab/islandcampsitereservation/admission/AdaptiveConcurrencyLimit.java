@@ -0,0 +1,65 @@
+package com.khattab.islandcampsitereservation.admission;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency limit for reservation writes that follows their latency (AIMD): every write finishing within the target
+ * raises the limit by 1/limit while the limit is what holds writes back, and a write slower than the target cuts it by a
+ * tenth. Like TCP congestion control, the limit is cut at most once per window: writes that were already running when it
+ * was last cut saw the same slowdown and do not cut it again. When the database slows down, fewer writes are let in and the ones admitted keep finishing on time, instead of
+ * every write queuing on the pool and slowing down together.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+    private double limit;
+    private int inFlight;
+    private boolean decreased;
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, long targetLatencyMillis) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.limit = maxLimit;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit)
+            return false;
+        inFlight++;
+        return true;
+    }
+
+    public synchronized void release(long latencyNanos) {
+        release(latencyNanos, System.nanoTime());
+    }
+
+    synchronized void release(long latencyNanos, long nowNanos) {
+        //Growing while under-used would only let the limit drift away from what was ever tested
+        boolean saturated = inFlight >= (int) limit;
+        inFlight--;
+        if (latencyNanos > targetLatencyNanos) {
+            boolean startedAfterLastDecrease = !decreased || nowNanos - latencyNanos - lastDecreaseNanos >= 0;
+            if (startedAfterLastDecrease) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                decreased = true;
+                lastDecreaseNanos = nowNanos;
+            }
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,124 @@
+package com.khattab.islandcampsitereservation.admission;
+
+import com.khattab.islandcampsitereservation.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Budgets that requests to /campsite must fit in before they reach the database. Availability reads share one token
+ * bucket; reservation writes share an adaptive concurrency limit; every client address, and for bookings every camper
+ * email, gets a token bucket of its own so one busy client cannot spend the shared budgets for everyone else. A request
+ * over budget is turned away with TooManyRequestsException (429) carrying how long to wait.
+ */
+@Component
+@ConditionalOnProperty(name = "campsite.admission.enabled", havingValue = "true")
+public class AdmissionControl {
+
+    //A full concurrency limit frees up as soon as any write finishes, so the shortest wait the header can express
+    private static final long WRITE_RETRY_AFTER_SECONDS = 1;
+
+    private final TokenBucket readBucket;
+    private final AdaptiveConcurrencyLimit writeLimit;
+    private final KeyedTokenBuckets clientBuckets;
+    private final KeyedTokenBuckets camperBuckets;
+    private final Counter readRejections;
+    private final Counter writeRejections;
+    private final Counter clientRejections;
+    private final Counter camperRejections;
+
+    @Autowired
+    public AdmissionControl(MeterRegistry meterRegistry,
+                            @Value("${campsite.admission.read.permits-per-second:500}") double readPermitsPerSecond,
+                            @Value("${campsite.admission.read.burst:1000}") int readBurst,
+                            @Value("${campsite.admission.write.min-limit:2}") int writeMinLimit,
+                            @Value("${campsite.admission.write.max-limit:20}") int writeMaxLimit,
+                            @Value("${campsite.admission.write.target-latency-ms:250}") long writeTargetLatencyMillis,
+                            @Value("${campsite.admission.client.permits-per-second:20}") double clientPermitsPerSecond,
+                            @Value("${campsite.admission.client.burst:50}") int clientBurst,
+                            @Value("${campsite.admission.camper.permits-per-minute:6}") double camperPermitsPerMinute,
+                            @Value("${campsite.admission.camper.burst:3}") int camperBurst) {
+        this.readBucket = new TokenBucket(readPermitsPerSecond, readBurst, System.nanoTime());
+        this.writeLimit = new AdaptiveConcurrencyLimit(writeMinLimit, writeMaxLimit, writeTargetLatencyMillis);
+        this.clientBuckets = new KeyedTokenBuckets(clientPermitsPerSecond, clientBurst);
+        this.camperBuckets = new KeyedTokenBuckets(camperPermitsPerMinute / 60, camperBurst);
+        this.readRejections = rejectionCounter(meterRegistry, "read");
+        this.writeRejections = rejectionCounter(meterRegistry, "write");
+        this.clientRejections = rejectionCounter(meterRegistry, "client");
+        this.camperRejections = rejectionCounter(meterRegistry, "camper");
+        Gauge.builder("campsite.admission.write.limit", writeLimit, AdaptiveConcurrencyLimit::getLimit)
+             .description("Reservation writes currently allowed to run at once")
+             .register(meterRegistry);
+        Gauge.builder("campsite.admission.write.in-flight", writeLimit, AdaptiveConcurrencyLimit::getInFlight)
+             .description("Reservation writes running")
+             .register(meterRegistry);
+    }
+
+    public void admitClient(String clientAddress) {
+        long waitNanos = clientBuckets.tryAcquire(clientAddress, System.nanoTime());
+        if (waitNanos > 0) {
+            clientRejections.increment();
+            throw new TooManyRequestsException("Too many requests from this client. Please slow down.", toRetryAfterSeconds(waitNanos));
+        }
+    }
+
+    public void admitRead() {
+        long waitNanos = readBucket.tryAcquire(System.nanoTime());
+        if (waitNanos > 0) {
+            readRejections.increment();
+            throw new TooManyRequestsException("Too many availability requests. Please try again shortly.", toRetryAfterSeconds(waitNanos));
+        }
+    }
+
+    //Every admitted write must be followed by releaseWrite, which feeds its latency back into the limit
+    public void admitWrite() {
+        if (!writeLimit.tryAcquire()) {
+            writeRejections.increment();
+            throw new TooManyRequestsException("Too many reservation requests. Please try again shortly.", WRITE_RETRY_AFTER_SECONDS);
+        }
+    }
+
+    public void releaseWrite(long latencyNanos) {
+        writeLimit.release(latencyNanos);
+    }
+
+    public void admitCamper(String camperEmail) {
+        if (camperEmail == null)
+            return;
+        long waitNanos = camperBuckets.tryAcquire(camperEmail.toLowerCase(Locale.ROOT), System.nanoTime());
+        if (waitNanos > 0) {
+            camperRejections.increment();
+            throw new TooManyRequestsException("Too many reservation requests for this camper. Please slow down.", toRetryAfterSeconds(waitNanos));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${campsite.admission.eviction-interval-ms:60000}")
+    public void evictIdleClients() {
+        long now = System.nanoTime();
+        clientBuckets.evictFull(now);
+        camperBuckets.evictFull(now);
+    }
+
+    AdaptiveConcurrencyLimit getWriteLimit() {
+        return writeLimit;
+    }
+
+    private static long toRetryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static Counter rejectionCounter(MeterRegistry meterRegistry, String budget) {
+        return Counter.builder("campsite.admission.rejected")
+                      .description("Requests turned away with 429, by the budget they exceeded")
+                      .tag("budget", budget)
+                      .register(meterRegistry);
+    }
+}
@@ -0,0 +1,71 @@
+package com.khattab.islandcampsitereservation.admission;
+
+import com.khattab.islandcampsitereservation.exception.TooManyRequestsException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.io.IOException;
+
+//Runs the admission checks ahead of CampsiteRestController; rejections are rendered by RestControllerExceptionHandler
+@Component
+@ConditionalOnProperty(name = "campsite.admission.enabled", havingValue = "true")
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final String CAMPSITE_PATH = "/campsite/";
+    private static final String RESERVATION_PATH = "/campsite/reservation";
+    private static final String IMPORT_PATH = "/campsite/reservation/import";
+    private static final String EXPORT_PATH = "/campsite/reservation/export";
+
+    private final AdmissionControl admissionControl;
+    private final HandlerExceptionResolver handlerExceptionResolver;
+
+    @Autowired
+    public AdmissionControlFilter(AdmissionControl admissionControl,
+                                  @Qualifier("handlerExceptionResolver") HandlerExceptionResolver handlerExceptionResolver) {
+        this.admissionControl = admissionControl;
+        this.handlerExceptionResolver = handlerExceptionResolver;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(CAMPSITE_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String requestURI = request.getRequestURI();
+        //Bulk transfers run for as long as the file takes; holding a permit that long would read as overload to the write limit
+        boolean bulk = requestURI.equals(IMPORT_PATH) || requestURI.equals(EXPORT_PATH);
+        boolean write = !bulk && requestURI.startsWith(RESERVATION_PATH) && !HttpMethod.GET.matches(request.getMethod());
+        try {
+            admissionControl.admitClient(request.getRemoteAddr());
+            if (write)
+                admissionControl.admitWrite();
+            else if (!bulk)
+                admissionControl.admitRead();
+        } catch (TooManyRequestsException ex) {
+            handlerExceptionResolver.resolveException(request, response, null, ex);
+            return;
+        }
+        if (!write) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            admissionControl.releaseWrite(System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.khattab.islandcampsitereservation.admission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//One token bucket per client key; buckets that have refilled completely are dropped, since a new one starts full anyway
+public class KeyedTokenBuckets {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    public KeyedTokenBuckets(double permitsPerSecond, int burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    public long tryAcquire(String key, long nowNanos) {
+        return buckets.computeIfAbsent(key, newKey -> new TokenBucket(permitsPerSecond, burst, nowNanos))
+                      .tryAcquire(nowNanos);
+    }
+
+    public void evictFull(long nowNanos) {
+        buckets.values().removeIf(bucket -> bucket.isFull(nowNanos));
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
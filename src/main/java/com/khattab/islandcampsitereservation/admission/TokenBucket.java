@@ -0,0 +1,39 @@
+package com.khattab.islandcampsitereservation.admission;
+
+import java.util.concurrent.TimeUnit;
+
+//Refilled lazily from the clock on each call, so an idle bucket costs nothing
+public class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilledAtNanos;
+
+    public TokenBucket(double permitsPerSecond, int burst, long nowNanos) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAtNanos = nowNanos;
+    }
+
+    //0 when a permit was taken, otherwise how long until the next one is due
+    public synchronized long tryAcquire(long nowNanos) {
+        refill(nowNanos);
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / permitsPerNano));
+    }
+
+    public synchronized boolean isFull(long nowNanos) {
+        refill(nowNanos);
+        return tokens >= burst;
+    }
+
+    private void refill(long nowNanos) {
+        tokens = Math.min(burst, tokens + (nowNanos - refilledAtNanos) * permitsPerNano);
+        refilledAtNanos = nowNanos;
+    }
+}
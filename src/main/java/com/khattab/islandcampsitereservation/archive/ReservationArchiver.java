@@ -0,0 +1,60 @@
+package com.khattab.islandcampsitereservation.archive;
+
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.entity.ReservationOutboxEvent;
+import com.khattab.islandcampsitereservation.outbox.ReservationOutboxWriter;
+import com.khattab.islandcampsitereservation.repository.ReservationArchiveRepository;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+//Moves reservations whose stay has ended into reservation_archive, one batch per run, so the reservation table and its
+//indexes only hold stays that can still be modified, cancelled or overlapped by a new booking. A past night never
+//counts towards availability, so no index or cache has to be told; while a sink is registered the outbox gets an ARCHIVED row per
+//reservation in the same transaction, so its consumers see the reservation leave. Opt-in: archived reservations are no longer
+//looked up, listed or exported.
+@Component
+@ConditionalOnProperty(name = "campsite.archive.enabled", havingValue = "true")
+public class ReservationArchiver {
+
+    private final ReservationRepository reservationRepository;
+    private final ReservationArchiveRepository reservationArchiveRepository;
+    private final ReservationOutboxWriter reservationOutboxWriter;
+    private final int batchSize;
+
+    @Autowired
+    public ReservationArchiver(ReservationRepository reservationRepository,
+                               ReservationArchiveRepository reservationArchiveRepository,
+                               ReservationOutboxWriter reservationOutboxWriter,
+                               @Value("${campsite.archive.batch-size:500}") int batchSize) {
+        this.reservationRepository = reservationRepository;
+        this.reservationArchiveRepository = reservationArchiveRepository;
+        this.reservationOutboxWriter = reservationOutboxWriter;
+        this.batchSize = batchSize;
+    }
+
+    //Each run is a short transaction; a backlog of past stays is worked off over successive runs
+    @Scheduled(fixedDelayString = "${campsite.archive.interval-ms:10000}", initialDelayString = "${campsite.archive.interval-ms:10000}")
+    @Transactional
+    public void archiveEndedStays() {
+        List<Reservation> reservations = reservationRepository.findEndedBeforeForUpdate(LocalDate.now(), PageRequest.of(0, batchSize));
+        if (reservations.isEmpty())
+            return;
+        List<Long> reservationIds = reservations.stream().map(Reservation::getId).toList();
+        LocalDateTime archivedAt = LocalDateTime.now();
+        reservationArchiveRepository.copyFromReservations(reservationIds, archivedAt);
+        reservationOutboxWriter.append(reservations.stream()
+                                                   .map(reservation -> ReservationOutboxEvent.archived(reservation, archivedAt))
+                                                   .toList());
+        reservationRepository.deleteAllByIdInBatch(reservationIds);
+    }
+}
@@ -0,0 +1,218 @@
+package com.khattab.islandcampsitereservation.bulk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.khattab.islandcampsitereservation.dto.AvailabilityCapacityDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationImportResultDTO;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import com.khattab.islandcampsitereservation.validation.CustomDatesValidator;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves reservations in and out as NDJSON, one reservation per line, holding no more than a batch in memory however
+ * many lines there are.
+ *
+ * Imported lines are validated like POST /campsite/reservation. Since no valid stay ends later than a month and a few
+ * nights from today, conflicts are settled in input order against a counter of the spots left on each night of that
+ * window, loaded once per site, instead of sorting the input. Accepted reservations are persisted
+ * campsite.bulk.import-batch-size at a time through reserveAll, one transaction and one batch of inserts each.
+ *
+ * Exports read the reservation table through a forward-only, read-only cursor and write each row as it arrives.
+ */
+@Component
+public class ReservationBulkTransfer {
+
+    static final int MAX_REPORTED_ERRORS = 100;
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    private static final String EXPORT_QUERY = "SELECT id, site_id, camper_full_name, camper_email, start_date, end_date " +
+            "FROM reservation ORDER BY id";
+
+    private final CampsiteReservationService campsiteReservationService;
+    private final CampsiteSites campsiteSites;
+    private final JdbcTemplate jdbcTemplate;
+    private final Validator validator;
+    private final ObjectReader lineReader;
+    private final ObjectWriter lineWriter;
+    private final int importBatchSize;
+
+    @Autowired
+    public ReservationBulkTransfer(CampsiteReservationService campsiteReservationService,
+                                   CampsiteSites campsiteSites,
+                                   JdbcTemplate jdbcTemplate,
+                                   Validator validator,
+                                   ObjectMapper objectMapper,
+                                   @Value("${campsite.bulk.import-batch-size:500}") int importBatchSize) {
+        this.campsiteReservationService = campsiteReservationService;
+        this.campsiteSites = campsiteSites;
+        this.jdbcTemplate = jdbcTemplate;
+        this.validator = validator;
+        this.lineReader = objectMapper.readerFor(ReservationDTO.class);
+        this.lineWriter = objectMapper.writerFor(ReservationDTO.class);
+        this.importBatchSize = importBatchSize;
+    }
+
+    public ReservationImportResultDTO importFrom(InputStream inputStream) throws IOException {
+        ImportRun run = new ImportRun();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        long lineNumber = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            if (!line.isBlank())
+                run.accept(lineNumber, line);
+        }
+        run.flush();
+        return new ReservationImportResultDTO(run.imported, run.rejected, run.errors);
+    }
+
+    public void exportTo(OutputStream outputStream) throws IOException {
+        OutputStream bufferedOutput = new BufferedOutputStream(outputStream);
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(EXPORT_QUERY,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                //MySQL only streams rows one by one with this fetch size; other drivers read in chunks of the given size
+                statement.setFetchSize("MySQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())
+                        ? Integer.MIN_VALUE : EXPORT_FETCH_SIZE);
+                return statement;
+            }, (ResultSet row) -> {
+                ReservationDTO reservationDTO = new ReservationDTO(row.getLong("id"), row.getLong("site_id"),
+                        row.getString("camper_full_name"), row.getString("camper_email"),
+                        row.getObject("start_date", LocalDate.class), row.getObject("end_date", LocalDate.class));
+                try {
+                    bufferedOutput.write(lineWriter.writeValueAsBytes(reservationDTO));
+                    bufferedOutput.write('\n');
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        bufferedOutput.flush();
+    }
+
+    //State of one import; the spot counters cover the nights a valid reservation can fall on
+    private final class ImportRun {
+
+        private final LocalDate firstNight = LocalDate.now().plusDays(1);
+        private final LocalDate lastNight = LocalDate.now().plusMonths(1).plusDays(CustomDatesValidator.MAX_RESERVATION_LENGTH_DAYS);
+        private final Map<Long, int[]> remainingSpotsBySite = new HashMap<>();
+        private final List<ReservationDTO> batch = new ArrayList<>();
+        private final List<Long> batchLineNumbers = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private long imported;
+        private long rejected;
+
+        private void accept(long lineNumber, String line) {
+            ReservationDTO reservationDTO;
+            try {
+                reservationDTO = lineReader.readValue(line);
+            } catch (JsonProcessingException ex) {
+                reject(lineNumber, "Not a reservation: " + ex.getOriginalMessage());
+                return;
+            }
+            String invalid = validate(reservationDTO);
+            if (invalid != null) {
+                reject(lineNumber, invalid);
+                return;
+            }
+            long siteId;
+            try {
+                siteId = campsiteSites.require(reservationDTO.getSiteId());
+            } catch (RuntimeException ex) {
+                reject(lineNumber, ex.getMessage());
+                return;
+            }
+            //Ids are handed out on insert; one carried over from an export would overwrite that reservation instead
+            reservationDTO.setId(null);
+            reservationDTO.setSiteId(siteId);
+
+            int[] remainingSpots = remainingSpotsBySite.computeIfAbsent(siteId, this::loadRemainingSpots);
+            int from = (int) ChronoUnit.DAYS.between(firstNight, reservationDTO.getStartDate());
+            int to = (int) ChronoUnit.DAYS.between(firstNight, reservationDTO.getEndDate());
+            for (int night = from; night <= to; night++) {
+                if (remainingSpots[night] <= 0) {
+                    reject(lineNumber, String.format("Reservation conflict with existing bookings. Cannot book from %s to %s",
+                            reservationDTO.getStartDate(), reservationDTO.getEndDate()));
+                    return;
+                }
+            }
+            for (int night = from; night <= to; night++)
+                remainingSpots[night]--;
+
+            batch.add(reservationDTO);
+            batchLineNumbers.add(lineNumber);
+            if (batch.size() >= importBatchSize)
+                flush();
+        }
+
+        private String validate(ReservationDTO reservationDTO) {
+            if (reservationDTO.getCamperFullName() == null || reservationDTO.getCamperEmail() == null
+                    || reservationDTO.getStartDate() == null || reservationDTO.getEndDate() == null)
+                return "camperFullName, camperEmail, startDate and endDate are required";
+            Set<ConstraintViolation<ReservationDTO>> violations = validator.validate(reservationDTO);
+            return violations.isEmpty() ? null : violations.iterator().next().getMessage();
+        }
+
+        private int[] loadRemainingSpots(long siteId) {
+            return campsiteReservationService.getRemainingCapacity(siteId, firstNight, lastNight)
+                                             .stream()
+                                             .mapToInt(AvailabilityCapacityDTO::getRemaining)
+                                             .toArray();
+        }
+
+        private void flush() {
+            if (batch.isEmpty())
+                return;
+            try {
+                imported += campsiteReservationService.reserveAll(batch).size();
+            } catch (ReservationConflictException | RuntimeException ex) {
+                //A live booking took a spot since the counters were loaded; the batch is settled one reservation at a time
+                for (int i = 0; i < batch.size(); i++) {
+                    try {
+                        campsiteReservationService.reserve(batch.get(i));
+                        imported++;
+                    } catch (ReservationConflictException | RuntimeException reservationEx) {
+                        reject(batchLineNumbers.get(i), reservationEx.getMessage());
+                    }
+                }
+            }
+            batch.clear();
+            batchLineNumbers.clear();
+        }
+
+        private void reject(long lineNumber, String reason) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS)
+                errors.add(String.format("Line %d: %s", lineNumber, reason));
+        }
+    }
+}
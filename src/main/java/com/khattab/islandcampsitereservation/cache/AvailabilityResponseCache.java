@@ -0,0 +1,151 @@
+package com.khattab.islandcampsitereservation.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.khattab.islandcampsitereservation.dto.AvailabilityFormat;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Availability responses already serialized to JSON, keyed by the requested range and format. Every client asking for the default
+ * window shares one entry, so a hit is a copy of bytes. Entries overlapping a committed booking change are evicted once
+ * the occupancy index shows the change, and the whole cache is dropped at midnight when the default window moves.
+ * Once campsite.availability.cache-max-entries ranges are cached, storing another drops the least recently used one.
+ * The hit and miss counts are read by the metrics registry at scrape time, so a lookup only bumps a LongAdder.
+ */
+@Component
+@ManagedResource(objectName = "com.khattab.islandcampsitereservation:type=AvailabilityResponseCache")
+public class AvailabilityResponseCache implements MeterBinder {
+
+    private final ObjectMapper objectMapper;
+    //Access-ordered, so every read moves its entry to the back; reads and writes alike hold the map's monitor
+    private final Map<ResponseKey, byte[]> responses;
+    //Bumped before every eviction, so a response computed across a change is never stored after the eviction ran
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public AvailabilityResponseCache(ObjectMapper objectMapper,
+                                     @Value("${campsite.availability.cache-max-entries:1024}") int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.responses = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ResponseKey, byte[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    //A null siteId caches the any-site answer, which every change to any site can affect
+    public byte[] get(AvailabilityFormat format, Long siteId, LocalDate startDate, LocalDate endDate, Supplier<?> availability) {
+        ResponseKey key = new ResponseKey(format, siteId, startDate, endDate);
+        byte[] cached;
+        synchronized (responses) {
+            cached = responses.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        long observedGeneration = generation.get();
+        byte[] response = serialize(availability.get());
+        synchronized (responses) {
+            //Evictions bump the generation under the same monitor, so none can run between this check and the put
+            if (generation.get() == observedGeneration)
+                responses.put(key, response);
+        }
+        return response;
+    }
+
+    //Ordered after the occupancy index so a miss right after the eviction already reads the new state
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationChanged(ReservationChangedEvent event) {
+        synchronized (responses) {
+            generation.incrementAndGet();
+            responses.keySet().removeIf(key -> key.includes(event.getSiteId())
+                    && ((event.releasesDates() && key.overlaps(event.getPreviousStartDate(), event.getPreviousEndDate()))
+                            || (event.takesDates() && key.overlaps(event.getStartDate(), event.getEndDate()))));
+        }
+    }
+
+    @ManagedOperation
+    @Scheduled(cron = "0 0 0 * * *")
+    public void clear() {
+        synchronized (responses) {
+            generation.incrementAndGet();
+            responses.clear();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("campsite.availability.cache.requests", hits, LongAdder::sum)
+                       .tag("result", "hit")
+                       .register(registry);
+        FunctionCounter.builder("campsite.availability.cache.requests", misses, LongAdder::sum)
+                       .tag("result", "miss")
+                       .register(registry);
+        Gauge.builder("campsite.availability.cache.size", this, AvailabilityResponseCache::getSize)
+             .register(registry);
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @ManagedAttribute
+    public int getSize() {
+        synchronized (responses) {
+            return responses.size();
+        }
+    }
+
+    private byte[] serialize(Object availability) {
+        try {
+            return objectMapper.writeValueAsBytes(availability);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private record ResponseKey(AvailabilityFormat format, Long siteId, LocalDate startDate, LocalDate endDate) {
+
+        boolean includes(Long changedSiteId) {
+            return siteId == null || siteId.equals(changedSiteId);
+        }
+
+        boolean overlaps(LocalDate otherStartDate, LocalDate otherEndDate) {
+            return !startDate.isAfter(otherEndDate) && !endDate.isBefore(otherStartDate);
+        }
+    }
+}
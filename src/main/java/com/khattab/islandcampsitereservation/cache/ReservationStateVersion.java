@@ -0,0 +1,45 @@
+package com.khattab.islandcampsitereservation.cache;
+
+import com.khattab.islandcampsitereservation.dto.AvailabilityFormat;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Counts committed reservation changes, per site and overall; availability ETags are derived from them so an unchanged
+//poll costs no work at all, and a booking on one site leaves the ETags of the others valid
+@Component
+public class ReservationStateVersion {
+
+    //Distinguishes this process, so a restarted counter never repeats an ETag a client got from a previous run
+    private final String instanceTag = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong version = new AtomicLong();
+    private final Map<Long, AtomicLong> siteVersions = new ConcurrentHashMap<>();
+
+    //Bumped only once the occupancy index shows the change and the cached responses it affects are gone,
+    //so a new ETag is never paired with the old availability
+    @Order(Ordered.HIGHEST_PRECEDENCE + 2)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationChanged(ReservationChangedEvent event) {
+        siteVersion(event.getSiteId()).incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    //Read before the availability is computed: a change landing in between then only costs the client one more download
+    //A null siteId is the any-site answer, which changes with every site
+    public String availabilityETag(AvailabilityFormat format, Long siteId, LocalDate startDate, LocalDate endDate) {
+        String site = siteId == null ? "any" : "site" + siteId;
+        long currentVersion = siteId == null ? version.get() : siteVersion(siteId).get();
+        return String.format("\"%s-%s-%d-%s-%s-%s\"", instanceTag, site, currentVersion, format.name().toLowerCase(), startDate, endDate);
+    }
+
+    private AtomicLong siteVersion(Long siteId) {
+        return siteVersions.computeIfAbsent(siteId, newSiteId -> new AtomicLong());
+    }
+}
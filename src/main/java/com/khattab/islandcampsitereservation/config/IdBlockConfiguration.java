@@ -0,0 +1,44 @@
+package com.khattab.islandcampsitereservation.config;
+
+import com.khattab.islandcampsitereservation.entity.id.PooledIdGenerator;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+//Id blocks are claimed on a couple of connections of their own, so the inserter holding Hibernate's optimizer lock
+//never waits for a request-pool connection that the inserters queued behind it are holding. A second DataSource bean
+//makes the auto-configured pool back off, so the request pool is declared here as the primary one, built the same way.
+@Configuration
+public class IdBlockConfiguration {
+
+    public static final String ID_BLOCK_DATA_SOURCE = "idBlockDataSource";
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    //A bean, so it is closed with the context and its metrics are published as hikaricp.* with pool="id-block"
+    @Bean(ID_BLOCK_DATA_SOURCE)
+    public HikariDataSource idBlockDataSource(DataSourceProperties dataSourceProperties,
+                                              @Value("${campsite.id-block.pool-size:2}") int poolSize) {
+        HikariDataSource idBlockDataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        idBlockDataSource.setPoolName("id-block");
+        idBlockDataSource.setMaximumPoolSize(poolSize);
+        idBlockDataSource.setMinimumIdle(0);
+        return idBlockDataSource;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer idBlockDataSourceCustomizer(@Qualifier(ID_BLOCK_DATA_SOURCE) HikariDataSource idBlockDataSource) {
+        return hibernateProperties -> hibernateProperties.put(PooledIdGenerator.DATA_SOURCE_SETTING, idBlockDataSource);
+    }
+}
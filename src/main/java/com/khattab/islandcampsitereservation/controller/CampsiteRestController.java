@@ -1,12 +1,22 @@
 package com.khattab.islandcampsitereservation.controller;
 
+import com.khattab.islandcampsitereservation.admission.AdmissionControl;
+import com.khattab.islandcampsitereservation.cache.AvailabilityResponseCache;
+import com.khattab.islandcampsitereservation.cache.ReservationStateVersion;
+import com.khattab.islandcampsitereservation.dto.AvailabilityFormat;
 import com.khattab.islandcampsitereservation.dto.ReservationDTO;
 import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.idempotency.IdempotencyKeyStore;
+import com.khattab.islandcampsitereservation.intake.ReservationIntakeQueue;
 import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import com.khattab.islandcampsitereservation.stream.AvailabilityChangeBroadcaster;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -14,27 +24,57 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.time.LocalDate;
-import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/campsite")
 public class CampsiteRestController {
 
     private final CampsiteReservationService campsiteReservationService;
+    private final AvailabilityResponseCache availabilityResponseCache;
+    private final ReservationStateVersion reservationStateVersion;
+    private final AvailabilityChangeBroadcaster availabilityChangeBroadcaster;
+    private final Optional<ReservationIntakeQueue> reservationIntakeQueue;
+    private final IdempotencyKeyStore idempotencyKeyStore;
+    private final Optional<AdmissionControl> admissionControl;
+    private final CampsiteSites campsiteSites;
 
     @Autowired
-    public CampsiteRestController(CampsiteReservationService campsiteReservationService) {
+    public CampsiteRestController(CampsiteReservationService campsiteReservationService,
+                                  AvailabilityResponseCache availabilityResponseCache,
+                                  ReservationStateVersion reservationStateVersion,
+                                  AvailabilityChangeBroadcaster availabilityChangeBroadcaster,
+                                  Optional<ReservationIntakeQueue> reservationIntakeQueue,
+                                  IdempotencyKeyStore idempotencyKeyStore,
+                                  Optional<AdmissionControl> admissionControl,
+                                  CampsiteSites campsiteSites) {
         this.campsiteReservationService = campsiteReservationService;
+        this.availabilityResponseCache = availabilityResponseCache;
+        this.reservationStateVersion = reservationStateVersion;
+        this.availabilityChangeBroadcaster = availabilityChangeBroadcaster;
+        this.reservationIntakeQueue = reservationIntakeQueue;
+        this.idempotencyKeyStore = idempotencyKeyStore;
+        this.admissionControl = admissionControl;
+        this.campsiteSites = campsiteSites;
     }
 
     @GetMapping("/availability")
-    public ResponseEntity<List<LocalDate>> getAvailability(
+    public ResponseEntity<byte[]> getAvailability(
             @RequestParam(name = "startDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam(name = "endDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+            @RequestParam(name = "endDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(name = "siteId", required = false) Long siteId,
+            @RequestParam(name = "format", required = false) String format,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest webRequest) {
+        AvailabilityFormat availabilityFormat = AvailabilityFormat.of(format, accept);
         if ((startDate == null && endDate != null) || (startDate != null && endDate == null)) {
             throw new IllegalArgumentException("To check for availability, both dates need to be provided or neither one");
         }
@@ -50,14 +90,48 @@ public class CampsiteRestController {
                     startDate, endDate));
         }
 
-        return new ResponseEntity<>(campsiteReservationService.getAvailability(startDate, endDate), HttpStatus.OK);
+        if (siteId != null)
+            campsiteSites.require(siteId);
+
+        //Sets the ETag header and answers 304 on a matching If-None-Match before anything is computed
+        if (webRequest.checkNotModified(reservationStateVersion.availabilityETag(availabilityFormat, siteId, startDate, endDate)))
+            return null;
+
+        LocalDate availabilityStartDate = startDate;
+        LocalDate availabilityEndDate = endDate;
+        Supplier<?> availability = switch (availabilityFormat) {
+            case DATES -> () -> campsiteReservationService.getAvailability(siteId, availabilityStartDate, availabilityEndDate);
+            case RANGES -> () -> campsiteReservationService.getAvailableIntervals(siteId, availabilityStartDate, availabilityEndDate);
+            case BITMAP -> () -> campsiteReservationService.getAvailabilityBitmap(siteId, availabilityStartDate, availabilityEndDate);
+            case CAPACITY -> () -> campsiteReservationService.getRemainingCapacity(siteId, availabilityStartDate, availabilityEndDate);
+        };
+        return ResponseEntity.status(HttpStatus.OK)
+                             .contentType(availabilityFormat.getMediaType())
+                             .varyBy(HttpHeaders.ACCEPT)
+                             .body(availabilityResponseCache.get(availabilityFormat, siteId, availabilityStartDate, availabilityEndDate, availability));
+    }
+
+    //Server-sent events: one availability-change event with the freed and taken date ranges per committed write
+    @GetMapping(path = "/availability/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAvailabilityChanges() {
+        return availabilityChangeBroadcaster.subscribe();
     }
 
     @PostMapping("/reservation")
     public ResponseEntity<ReservationDTO> reserve(
-            @RequestBody @Valid ReservationDTO reservationDTO) throws ReservationConflictException {
-        return new ResponseEntity<>(campsiteReservationService.reserve(reservationDTO),
-                HttpStatus.OK);
+            @RequestBody @Valid ReservationDTO reservationDTO,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) throws ReservationConflictException {
+        //The camper is only known once the body is read, so this budget is checked here rather than in AdmissionControlFilter
+        Runnable admitCamper = () -> admissionControl.ifPresent(admission -> admission.admitCamper(reservationDTO.getCamperEmail()));
+        //Keyed requests skip the intake queue: the key has to be claimed in the same transaction as the booking.
+        //A replay of a key answers from the store and does not count against the camper's budget
+        if (idempotencyKey != null)
+            return new ResponseEntity<>(idempotencyKeyStore.reserve(idempotencyKey, reservationDTO, admitCamper), HttpStatus.OK);
+        admitCamper.run();
+        ReservationDTO reservedDTO = reservationIntakeQueue.isPresent()
+                ? reservationIntakeQueue.get().reserve(reservationDTO)
+                : campsiteReservationService.reserve(reservationDTO);
+        return new ResponseEntity<>(reservedDTO, HttpStatus.OK);
     }
 
     @DeleteMapping("/reservation/{reservationId}")
@@ -69,7 +143,7 @@ public class CampsiteRestController {
     //Patch not Put since we're only updating the dates and not the whole Reservation Entity for now (subject to change)
     @PatchMapping("/reservation/{reservationId}")
     public ResponseEntity<ReservationDTO> modifyReservation(@PathVariable String reservationId,
-                                                            @RequestBody @Valid ReservationDTO modifiedReservationDatesDTO) {
+                                                            @RequestBody @Valid ReservationDTO modifiedReservationDatesDTO) throws ReservationConflictException {
         return new ResponseEntity<>(campsiteReservationService.modifyReservation(reservationId, modifiedReservationDatesDTO), HttpStatus.OK);
     }
 }
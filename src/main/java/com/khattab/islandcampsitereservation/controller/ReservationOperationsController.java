@@ -0,0 +1,106 @@
+package com.khattab.islandcampsitereservation.controller;
+
+import com.khattab.islandcampsitereservation.bulk.ReservationBulkTransfer;
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationImportResultDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationPageDTO;
+import com.khattab.islandcampsitereservation.exception.OperationsAccessDeniedException;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+
+//Staff tools that read every camper's details or book in bulk. Off by default; when on, each request must carry
+//Authorization: Bearer with campsite.operations.token, so campers on the public API cannot reach them
+@RestController
+@RequestMapping("/campsite")
+@ConditionalOnProperty(name = "campsite.operations.enabled", havingValue = "true")
+public class ReservationOperationsController {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final CampsiteReservationService campsiteReservationService;
+    private final ReservationBulkTransfer reservationBulkTransfer;
+    private final byte[] operationsToken;
+
+    @Autowired
+    public ReservationOperationsController(CampsiteReservationService campsiteReservationService,
+                                           ReservationBulkTransfer reservationBulkTransfer,
+                                           @Value("${campsite.operations.token:}") String operationsToken) {
+        if (operationsToken.isBlank())
+            throw new IllegalStateException("campsite.operations.token must be set when campsite.operations.enabled=true");
+        this.campsiteReservationService = campsiteReservationService;
+        this.reservationBulkTransfer = reservationBulkTransfer;
+        this.operationsToken = operationsToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //Keyset pagination on (startDate, id): each page carries the cursor of the next one, so deep pages cost the same as the first
+    @GetMapping("/reservations")
+    public ResponseEntity<ReservationPageDTO> listReservations(
+            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestParam(name = "startDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(name = "endDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(name = "camperEmail", required = false) String camperEmail,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "limit", defaultValue = "50") int limit) {
+        requireOperator(authorization);
+        if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException(String.format("Cannot list reservations. startDate: %s cannot precede endDate: %s",
+                    startDate, endDate));
+        }
+        return new ResponseEntity<>(campsiteReservationService.listReservations(startDate, endDate, camperEmail, cursor, limit), HttpStatus.OK);
+    }
+
+    @GetMapping("/reservation/{reservationId}")
+    public ResponseEntity<ReservationDTO> getReservation(
+            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @PathVariable String reservationId) {
+        requireOperator(authorization);
+        return new ResponseEntity<>(campsiteReservationService.getReservation(reservationId), HttpStatus.OK);
+    }
+
+    //NDJSON, one reservation per line; lines that fail validation or conflict are reported back and the rest are booked
+    @PostMapping(path = "/reservation/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ReservationImportResultDTO> importReservations(
+            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            InputStream reservations) throws IOException {
+        requireOperator(authorization);
+        return new ResponseEntity<>(reservationBulkTransfer.importFrom(reservations), HttpStatus.OK);
+    }
+
+    @GetMapping(path = "/reservation/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportReservations(
+            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        requireOperator(authorization);
+        StreamingResponseBody reservations = reservationBulkTransfer::exportTo;
+        return ResponseEntity.status(HttpStatus.OK)
+                             .contentType(MediaType.APPLICATION_NDJSON)
+                             .body(reservations);
+    }
+
+    //Constant-time comparison, so response timing does not reveal how much of a guessed token was right
+    private void requireOperator(String authorization) {
+        if (authorization == null || !authorization.startsWith(BEARER_PREFIX) || !MessageDigest.isEqual(operationsToken,
+                authorization.substring(BEARER_PREFIX.length()).getBytes(StandardCharsets.UTF_8)))
+            throw new OperationsAccessDeniedException("A valid operations token is required");
+    }
+}
@@ -0,0 +1,19 @@
+package com.khattab.islandcampsitereservation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDate;
+
+//Bit i (least significant bit first within each byte) is set when startDate + i days is free; bitmap is base64
+@Getter
+@Setter
+@AllArgsConstructor
+public class AvailabilityBitmapDTO {
+
+    private LocalDate startDate;
+    private int days;
+    private String bitmap;
+
+    public AvailabilityBitmapDTO() {}
+}
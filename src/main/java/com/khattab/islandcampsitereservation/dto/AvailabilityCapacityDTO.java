@@ -0,0 +1,18 @@
+package com.khattab.islandcampsitereservation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDate;
+
+//Spots still free on one night, summed over every site when no site was asked for
+@Getter
+@Setter
+@AllArgsConstructor
+public class AvailabilityCapacityDTO {
+
+    private LocalDate date;
+    private int remaining;
+
+    public AvailabilityCapacityDTO() {}
+}
@@ -0,0 +1,19 @@
+package com.khattab.islandcampsitereservation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import java.util.List;
+
+//Delta pushed to availability stream subscribers after a committed reservation change
+@Getter
+@Setter
+@AllArgsConstructor
+public class AvailabilityChangeDTO {
+
+    private Long siteId;
+    private List<AvailabilityIntervalDTO> freed;
+    private List<AvailabilityIntervalDTO> taken;
+
+    public AvailabilityChangeDTO() {}
+}
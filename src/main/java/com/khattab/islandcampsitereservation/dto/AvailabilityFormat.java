@@ -0,0 +1,43 @@
+package com.khattab.islandcampsitereservation.dto;
+
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.List;
+
+//Representations of GET /campsite/availability, chosen by the format parameter or else by the Accept header
+public enum AvailabilityFormat {
+
+    DATES(MediaType.APPLICATION_JSON),
+    RANGES(MediaType.valueOf("application/vnd.campsite.availability-ranges+json")),
+    BITMAP(MediaType.valueOf("application/vnd.campsite.availability-bitmap+json")),
+    CAPACITY(MediaType.valueOf("application/vnd.campsite.availability-capacity+json"));
+
+    private final MediaType mediaType;
+
+    AvailabilityFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public static AvailabilityFormat of(String format, String accept) {
+        if (format != null) {
+            return Arrays.stream(values())
+                         .filter(candidate -> candidate.name().equalsIgnoreCase(format))
+                         .findFirst()
+                         .orElseThrow(() -> new IllegalArgumentException(String.format(
+                                 "Unknown availability format: %s. Expected one of dates, ranges, bitmap, capacity", format)));
+        }
+        if (accept != null) {
+            List<MediaType> acceptedTypes = MediaType.parseMediaTypes(accept);
+            for (AvailabilityFormat candidate : List.of(RANGES, BITMAP, CAPACITY)) {
+                if (acceptedTypes.stream().anyMatch(acceptedType -> acceptedType.equalsTypeAndSubtype(candidate.mediaType)))
+                    return candidate;
+            }
+        }
+        return DATES;
+    }
+}
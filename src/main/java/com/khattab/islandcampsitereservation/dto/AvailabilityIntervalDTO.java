@@ -0,0 +1,18 @@
+package com.khattab.islandcampsitereservation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDate;
+
+//A run of consecutive free days, both ends inclusive
+@Getter
+@Setter
+@AllArgsConstructor
+public class AvailabilityIntervalDTO {
+
+    private LocalDate from;
+    private LocalDate to;
+
+    public AvailabilityIntervalDTO() {}
+}
@@ -18,6 +18,9 @@ public class ReservationDTO {
 
     @Positive
     private Long id;
+    //Optional: a booking without one is for the original campsite, site 1
+    @Positive
+    private Long siteId;
     private String camperFullName;
     @Email
     private String camperEmail;
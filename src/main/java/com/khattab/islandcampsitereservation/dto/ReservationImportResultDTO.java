@@ -0,0 +1,19 @@
+package com.khattab.islandcampsitereservation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import java.util.List;
+
+//Outcome of a bulk import; errors name the rejected lines, up to the first hundred of them
+@Getter
+@Setter
+@AllArgsConstructor
+public class ReservationImportResultDTO {
+
+    private long imported;
+    private long rejected;
+    private List<String> errors;
+
+    public ReservationImportResultDTO() {}
+}
@@ -0,0 +1,18 @@
+package com.khattab.islandcampsitereservation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import java.util.List;
+
+//One page of GET /campsite/reservations; nextCursor is null on the last page
+@Getter
+@Setter
+@AllArgsConstructor
+public class ReservationPageDTO {
+
+    private List<ReservationDTO> reservations;
+    private String nextCursor;
+
+    public ReservationPageDTO() {}
+}
@@ -0,0 +1,55 @@
+package com.khattab.islandcampsitereservation.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+//A reservation whose stay has ended, moved out of the reservation table by ReservationArchiver; it keeps its original id
+@Getter
+@Setter
+@AllArgsConstructor
+@Entity(name = "ArchivedReservation")
+@Table(name = "reservation_archive",
+        indexes = @Index(name = "idx_reservation_archive_email_start", columnList = "camper_email, start_date"))
+public class ArchivedReservation {
+
+    @Id
+    @Column(name = "id")
+    private Long id;
+    @Column(name = "site_id", nullable = false)
+    private Long siteId;
+    @Column(name = "camper_full_name", nullable = false)
+    private String camperFullName;
+    @Column(name = "camper_email", nullable = false)
+    private String camperEmail;
+    @Column(name = "start_date", nullable = false)
+    private LocalDate startDate;
+    @Column(name = "end_date", nullable = false)
+    private LocalDate endDate;
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+
+    public ArchivedReservation() {
+    }
+
+    @Override
+    public String toString() {
+        return "ArchivedReservation{" +
+                "id=" + getId() +
+                ", SiteId=" + getSiteId() +
+                ", CamperFullName='" + getCamperFullName() + '\'' +
+                ", CamperEmail='" + getCamperEmail() + '\'' +
+                ", StartDate=" + getStartDate() +
+                ", EndDate=" + getEndDate() +
+                ", ArchivedAt=" + getArchivedAt() +
+                "}";
+    }
+}
@@ -0,0 +1,61 @@
+package com.khattab.islandcampsitereservation.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+//One row per night of a site, counting the spots still free; a booking takes a spot on each of its nights with a
+//conditional UPDATE, so a full night rejects it without any reservation row being read or locked
+@Getter
+@Setter
+@AllArgsConstructor
+@Entity(name = "NightCapacity")
+@IdClass(NightCapacity.Key.class)
+@Table(name = "night_capacity")
+public class NightCapacity {
+
+    @Id
+    @Column(name = "site_id")
+    private Long siteId;
+    @Id
+    @Column(name = "night")
+    private LocalDate night;
+    @Column(name = "capacity", nullable = false)
+    private int capacity;
+    //Can drop below zero when the capacity is lowered under the bookings already made
+    @Column(name = "remaining", nullable = false)
+    private int remaining;
+
+    public NightCapacity() {
+    }
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long siteId;
+        private LocalDate night;
+    }
+
+    @Override
+    public String toString() {
+        return "NightCapacity{" +
+                "SiteId=" + getSiteId() +
+                ", Night=" + getNight() +
+                ", Capacity=" + getCapacity() +
+                ", Remaining=" + getRemaining() +
+                "}";
+    }
+}
@@ -1,25 +1,45 @@
 package com.khattab.islandcampsitereservation.entity;
 
+import com.khattab.islandcampsitereservation.entity.id.PooledIdGenerator;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-import lombok.AllArgsConstructor;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.TableGenerator;
 
 import java.time.LocalDate;
 
 @Getter
 @Setter
-@AllArgsConstructor
 @Entity(name = "Reservation")
+@Table(indexes = {
+        //Overlap lookups seek on the site and then start_date; both indexes carry the id so date-range projections are
+        //answered from the index alone
+        @Index(name = "idx_reservation_site_start_end", columnList = "site_id, start_date, endDate"),
+        @Index(name = "idx_reservation_end_start", columnList = "endDate, start_date"),
+        //Listing pages seek on (start_date, id), across all sites or within one camper's bookings
+        @Index(name = "idx_reservation_start_id", columnList = "start_date, id"),
+        @Index(name = "idx_reservation_email_start_id", columnList = "camperEmail, start_date, id")
+})
 public class Reservation {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "reservation_id")
+    @GenericGenerator(name = "reservation_id", type = PooledIdGenerator.class,
+            parameters = @Parameter(name = TableGenerator.SEGMENT_VALUE_PARAM, value = "reservation"))
     private Long id;
+    //Rows from before sites existed belong to the original campsite
+    @ColumnDefault("1")
+    @Column(name = "site_id", nullable = false)
+    private Long siteId;
     @Column(name = "camperFullName", nullable = false)
     private String camperFullName;
     @Column(name = "camperEmail", nullable = false)
@@ -28,14 +48,30 @@ public class Reservation {
     private LocalDate startDate;
     @Column(name = "endDate", nullable = false)
     private LocalDate endDate;
+    //Checked on every update and delete; only the optimistic concurrency mode relies on it to detect lost updates.
+    //The default lets schema update add the column to a populated table and keeps rows written outside JPA valid
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private long version;
 
     public Reservation() {
     }
 
+    public Reservation(Long id, Long siteId, String camperFullName, String camperEmail, LocalDate startDate, LocalDate endDate) {
+        this.id = id;
+        this.siteId = siteId;
+        this.camperFullName = camperFullName;
+        this.camperEmail = camperEmail;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
     @Override
     public String toString() {
         return "Reservation{" +
                 "id=" + getId() +
+                ", SiteId=" + getSiteId() +
                 ", CamperFullName='" + getCamperFullName() + '\'' +
                 ", CamperEmail='" + getCamperEmail() + '\'' +
                 ", StartDate=" + getStartDate() +
@@ -0,0 +1,47 @@
+package com.khattab.islandcampsitereservation.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+//Idempotency-Key of a POST /campsite/reservation, claimed in the transaction that books the reservation
+@Getter
+@Setter
+@AllArgsConstructor
+@Entity(name = "ReservationIdempotencyKey")
+@Table(name = "reservation_idempotency_key",
+        indexes = @Index(name = "idx_reservation_idempotency_key_created_at", columnList = "created_at"))
+public class ReservationIdempotencyKey {
+
+    @Id
+    @Column(name = "idempotency_key", length = 255)
+    private String idempotencyKey;
+    //SHA-256 of the request body, so a key replayed with different details is rejected instead of answered
+    @Column(name = "request_fingerprint", nullable = false, length = 64)
+    private String requestFingerprint;
+    //Null only while the claiming transaction is still booking
+    @Column(name = "reservation_id")
+    private Long reservationId;
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public ReservationIdempotencyKey() {
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationIdempotencyKey{" +
+                "IdempotencyKey='" + getIdempotencyKey() + '\'' +
+                ", RequestFingerprint='" + getRequestFingerprint() + '\'' +
+                ", ReservationId=" + getReservationId() +
+                ", CreatedAt=" + getCreatedAt() +
+                "}";
+    }
+}
@@ -0,0 +1,95 @@
+package com.khattab.islandcampsitereservation.entity;
+
+import com.khattab.islandcampsitereservation.entity.id.PooledIdGenerator;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.TableGenerator;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+//Append-only log of committed reservation changes, written in the transaction that made the change
+@Getter
+@Setter
+@AllArgsConstructor
+@Entity(name = "ReservationOutboxEvent")
+@Table(name = "reservation_outbox",
+        indexes = @Index(name = "idx_reservation_outbox_published_id", columnList = "published_at, id"))
+public class ReservationOutboxEvent {
+
+    public enum ChangeType { RESERVED, MODIFIED, CANCELLED, ARCHIVED }
+
+    @Id
+    @GeneratedValue(generator = "reservation_outbox_id")
+    @GenericGenerator(name = "reservation_outbox_id", type = PooledIdGenerator.class,
+            parameters = @Parameter(name = TableGenerator.SEGMENT_VALUE_PARAM, value = "reservation_outbox"))
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false, length = 16)
+    private ChangeType changeType;
+    @Column(name = "reservation_id", nullable = false)
+    private Long reservationId;
+    @ColumnDefault("1")
+    @Column(name = "site_id", nullable = false)
+    private Long siteId;
+    @Column(name = "previous_start_date")
+    private LocalDate previousStartDate;
+    @Column(name = "previous_end_date")
+    private LocalDate previousEndDate;
+    @Column(name = "start_date")
+    private LocalDate startDate;
+    @Column(name = "end_date")
+    private LocalDate endDate;
+    @Column(name = "occurred_at", nullable = false)
+    private LocalDateTime occurredAt;
+    //Set once every sink has accepted the event
+    @Column(name = "published_at")
+    private LocalDateTime publishedAt;
+
+    public ReservationOutboxEvent() {
+    }
+
+    public static ReservationOutboxEvent of(ReservationChangedEvent event, LocalDateTime occurredAt) {
+        ChangeType changeType = !event.releasesDates() ? ChangeType.RESERVED
+                : !event.takesDates() ? ChangeType.CANCELLED
+                : ChangeType.MODIFIED;
+        return new ReservationOutboxEvent(null, changeType, event.getReservationId(), event.getSiteId(),
+                event.getPreviousStartDate(), event.getPreviousEndDate(),
+                event.getStartDate(), event.getEndDate(), occurredAt, null);
+    }
+
+    //Like a cancellation the stay leaves the reservation table, but it was kept, so consumers can tell the two apart
+    public static ReservationOutboxEvent archived(Reservation reservation, LocalDateTime occurredAt) {
+        return new ReservationOutboxEvent(null, ChangeType.ARCHIVED, reservation.getId(), reservation.getSiteId(),
+                reservation.getStartDate(), reservation.getEndDate(), null, null, occurredAt, null);
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationOutboxEvent{" +
+                "id=" + getId() +
+                ", ChangeType=" + getChangeType() +
+                ", ReservationId=" + getReservationId() +
+                ", SiteId=" + getSiteId() +
+                ", PreviousStartDate=" + getPreviousStartDate() +
+                ", PreviousEndDate=" + getPreviousEndDate() +
+                ", StartDate=" + getStartDate() +
+                ", EndDate=" + getEndDate() +
+                ", OccurredAt=" + getOccurredAt() +
+                ", PublishedAt=" + getPublishedAt() +
+                "}";
+    }
+}
@@ -0,0 +1,49 @@
+package com.khattab.islandcampsitereservation.entity.id;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+//Rows inserted while ids came from AUTO_INCREMENT are not counted in id_block, so each segment is moved past the ids
+//already in use before the first block is handed out. Runs once the schema is in place and before anything is saved.
+@Component
+@DependsOn("entityManagerFactory")
+public class IdBlockAligner {
+
+    //Segment value -> table whose ids it hands out
+    private static final Map<String, String> SEGMENT_TABLES = Map.of(
+            "reservation", "reservation",
+            "reservation_outbox", "reservation_outbox");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public IdBlockAligner(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void alignSegments() {
+        SEGMENT_TABLES.forEach(this::alignSegment);
+    }
+
+    private void alignSegment(String segment, String table) {
+        Long nextFreeId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table, Long.class);
+        String idBlockTable = PooledIdGenerator.TABLE;
+        String segmentColumn = PooledIdGenerator.SEGMENT_COLUMN;
+        String valueColumn = PooledIdGenerator.VALUE_COLUMN;
+        Integer rows = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM " + idBlockTable + " WHERE " + segmentColumn + " = ?", Integer.class, segment);
+        if (rows == null || rows == 0) {
+            jdbcTemplate.update("INSERT INTO " + idBlockTable + " (" + segmentColumn + ", " + valueColumn + ") VALUES (?, ?)",
+                                segment, nextFreeId);
+        } else {
+            jdbcTemplate.update("UPDATE " + idBlockTable + " SET " + valueColumn + " = ? WHERE " + segmentColumn + " = ? AND " + valueColumn + " < ?",
+                                nextFreeId, segment, nextFreeId);
+        }
+    }
+}
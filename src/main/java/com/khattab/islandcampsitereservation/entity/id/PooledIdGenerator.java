@@ -0,0 +1,118 @@
+package com.khattab.islandcampsitereservation.entity.id;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Table-backed pooled-lo generator: each round trip to the id_block table reserves a block of ids, so inserts no
+ * longer need the database to hand back a key and Hibernate can batch them. The block size is read from the
+ * campsite.id-block-size Hibernate setting (spring.jpa.properties.campsite.id-block-size).
+ *
+ * Blocks are claimed in their own short transaction while Hibernate's optimizer lock is held. Every inserter already
+ * holds its transaction's connection, so with that connection taken from the request pool the claim can wait forever
+ * behind inserters that hold the rest of the pool while they queue on the optimizer lock. When a DataSource is
+ * registered under campsite.id-block-data-source the blocks are claimed through it instead.
+ */
+public class PooledIdGenerator extends TableGenerator {
+
+    public static final String TABLE = "id_block";
+    public static final String SEGMENT_COLUMN = "sequence_name";
+    public static final String VALUE_COLUMN = "next_val";
+    public static final String BLOCK_SIZE_SETTING = "campsite.id-block-size";
+    public static final String DATA_SOURCE_SETTING = "campsite.id-block-data-source";
+    public static final int DEFAULT_BLOCK_SIZE = 50;
+
+    private DataSource blockDataSource;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        ConfigurationService configurationService = serviceRegistry.getService(ConfigurationService.class);
+        int blockSize = configurationService.getSetting(BLOCK_SIZE_SETTING,
+                                                        value -> Integer.parseInt(value.toString()), DEFAULT_BLOCK_SIZE);
+        blockDataSource = (DataSource) configurationService.getSettings().get(DATA_SOURCE_SETTING);
+
+        Properties pooledParams = new Properties();
+        pooledParams.putAll(params);
+        pooledParams.setProperty(TABLE_PARAM, TABLE);
+        pooledParams.setProperty(SEGMENT_COLUMN_PARAM, SEGMENT_COLUMN);
+        pooledParams.setProperty(VALUE_COLUMN_PARAM, VALUE_COLUMN);
+        pooledParams.setProperty(INCREMENT_PARAM, String.valueOf(blockSize));
+        pooledParams.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        super.configure(type, pooledParams, serviceRegistry);
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        if (blockDataSource == null)
+            return super.generate(session, object);
+        return getOptimizer().generate(new AccessCallback() {
+            @Override
+            public IntegralDataTypeHolder getNextValue() {
+                return claimBlock();
+            }
+
+            @Override
+            public String getTenantIdentifier() {
+                return session.getTenantIdentifier();
+            }
+        });
+    }
+
+    //Returns the first id of the claimed block and moves the segment past it, mirroring TableGenerator's own SQL
+    private IntegralDataTypeHolder claimBlock() {
+        try (Connection connection = blockDataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long firstId = readOrInsertSegment(connection);
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE " + TABLE + " SET " + VALUE_COLUMN + " = ? WHERE " + SEGMENT_COLUMN + " = ?")) {
+                    update.setLong(1, firstId + getIncrementSize());
+                    update.setString(2, getSegmentValue());
+                    update.executeUpdate();
+                }
+                connection.commit();
+                return IdentifierGeneratorHelper.getIntegralDataTypeHolder(getIdentifierType().getReturnedClass())
+                                                .initialize(firstId);
+            } catch (SQLException | RuntimeException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            throw new HibernateException(String.format("Could not claim an id block for segment %s", getSegmentValue()), ex);
+        }
+    }
+
+    private long readOrInsertSegment(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT " + VALUE_COLUMN + " FROM " + TABLE + " WHERE " + SEGMENT_COLUMN + " = ? FOR UPDATE")) {
+            select.setString(1, getSegmentValue());
+            try (ResultSet resultSet = select.executeQuery()) {
+                if (resultSet.next())
+                    return resultSet.getLong(1);
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + TABLE + " (" + SEGMENT_COLUMN + ", " + VALUE_COLUMN + ") VALUES (?, ?)")) {
+            insert.setString(1, getSegmentValue());
+            insert.setLong(2, getInitialValue());
+            insert.executeUpdate();
+        }
+        return getInitialValue();
+    }
+}
@@ -0,0 +1,34 @@
+package com.khattab.islandcampsitereservation.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+//Published by the service on every write; previous dates are null for a new booking, new dates are null for a cancellation
+@Getter
+@AllArgsConstructor
+public class ReservationChangedEvent {
+    private final Long reservationId;
+    private final Long siteId;
+    private final LocalDate previousStartDate;
+    private final LocalDate previousEndDate;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+
+    public static ReservationChangedEvent reserved(Long reservationId, Long siteId, LocalDate startDate, LocalDate endDate) {
+        return new ReservationChangedEvent(reservationId, siteId, null, null, startDate, endDate);
+    }
+
+    public static ReservationChangedEvent cancelled(Long reservationId, Long siteId, LocalDate startDate, LocalDate endDate) {
+        return new ReservationChangedEvent(reservationId, siteId, startDate, endDate, null, null);
+    }
+
+    public boolean releasesDates() {
+        return previousStartDate != null;
+    }
+
+    public boolean takesDates() {
+        return startDate != null;
+    }
+}
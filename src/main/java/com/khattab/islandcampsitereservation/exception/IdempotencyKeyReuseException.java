@@ -0,0 +1,7 @@
+package com.khattab.islandcampsitereservation.exception;
+
+public class IdempotencyKeyReuseException extends RuntimeException {
+    public IdempotencyKeyReuseException(String message) {
+        super(message);
+    }
+}
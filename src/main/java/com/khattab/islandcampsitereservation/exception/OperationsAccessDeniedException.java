@@ -0,0 +1,8 @@
+package com.khattab.islandcampsitereservation.exception;
+
+public class OperationsAccessDeniedException extends RuntimeException {
+
+    public OperationsAccessDeniedException(String message) {
+        super(message);
+    }
+}
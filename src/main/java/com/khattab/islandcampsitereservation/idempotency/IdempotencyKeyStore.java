@@ -0,0 +1,151 @@
+package com.khattab.islandcampsitereservation.idempotency;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idempotency-Key handling for POST /campsite/reservation. Keys are remembered in memory first: a repeat of a key whose
+ * booking is still running waits for that booking, and a repeat of a finished one gets the same reservation back without
+ * reaching the locking path. Memory holds at most campsite.idempotency.max-entries keys for campsite.idempotency.ttl-minutes;
+ * beyond that, after a restart, or on another instance, the key is found in the reservation_idempotency_key table.
+ */
+@Component
+public class IdempotencyKeyStore {
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    private final PersistedIdempotencyKeys persistedIdempotencyKeys;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdempotencyKeyStore(PersistedIdempotencyKeys persistedIdempotencyKeys,
+                               @Value("${campsite.idempotency.max-entries:10000}") int maxEntries,
+                               @Value("${campsite.idempotency.ttl-minutes:1440}") long ttlMinutes) {
+        this.persistedIdempotencyKeys = persistedIdempotencyKeys;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    public ReservationDTO reserve(String idempotencyKey, ReservationDTO reservationDTO) throws ReservationConflictException {
+        return reserve(idempotencyKey, reservationDTO, () -> {});
+    }
+
+    //admitBooking runs only when the key is new, right before the booking is made; a replay never reaches it
+    public ReservationDTO reserve(String idempotencyKey, ReservationDTO reservationDTO,
+                                  Runnable admitBooking) throws ReservationConflictException {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH)
+            throw new IllegalArgumentException(String.format(
+                    "Idempotency-Key must be between 1 and %d characters", MAX_KEY_LENGTH));
+        String requestFingerprint = fingerprintOf(reservationDTO);
+        for (;;) {
+            long now = System.currentTimeMillis();
+            Entry existing = entries.get(idempotencyKey);
+            if (existing != null && existing.expiresAtMillis() <= now) {
+                entries.remove(idempotencyKey, existing);
+            } else if (existing != null) {
+                if (!existing.requestFingerprint().equals(requestFingerprint))
+                    throw PersistedIdempotencyKeys.reuseOf(idempotencyKey);
+                return await(existing.result());
+            } else if (entries.size() >= maxEntries) {
+                //Memory is full: the table alone still keeps the key idempotent, only without the shortcut
+                return reserveThroughTable(idempotencyKey, requestFingerprint, reservationDTO, admitBooking);
+            } else {
+                Entry claimed = new Entry(requestFingerprint, now + ttlMillis, new CompletableFuture<>());
+                if (entries.putIfAbsent(idempotencyKey, claimed) == null)
+                    return complete(idempotencyKey, claimed, reservationDTO, admitBooking);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${campsite.idempotency.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAtMillis() <= now && entry.result().isDone());
+        persistedIdempotencyKeys.deleteCreatedBefore(LocalDateTime.now().minus(ttlMillis, ChronoUnit.MILLIS));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private ReservationDTO complete(String idempotencyKey, Entry claimed, ReservationDTO reservationDTO,
+                                    Runnable admitBooking) throws ReservationConflictException {
+        try {
+            ReservationDTO reservedDTO = reserveThroughTable(idempotencyKey, claimed.requestFingerprint(), reservationDTO, admitBooking);
+            claimed.result().complete(reservedDTO);
+            return reservedDTO;
+        } catch (ReservationConflictException | RuntimeException ex) {
+            //Failures are not remembered, so the client can retry the same key once the cause is gone
+            entries.remove(idempotencyKey, claimed);
+            claimed.result().completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private ReservationDTO reserveThroughTable(String idempotencyKey, String requestFingerprint, ReservationDTO reservationDTO,
+                                               Runnable admitBooking) throws ReservationConflictException {
+        Optional<ReservationDTO> replayedDTO = persistedIdempotencyKeys.find(idempotencyKey, requestFingerprint, reservationDTO);
+        if (replayedDTO.isPresent())
+            return replayedDTO.get();
+        admitBooking.run();
+        try {
+            return persistedIdempotencyKeys.reserve(idempotencyKey, requestFingerprint, reservationDTO);
+        } catch (DataIntegrityViolationException ex) {
+            //Another instance claimed the key first and waited out its commit, so its row is there to answer from
+            return persistedIdempotencyKeys.find(idempotencyKey, requestFingerprint, reservationDTO).orElseThrow(() -> ex);
+        }
+    }
+
+    private static ReservationDTO await(CompletableFuture<ReservationDTO> result) throws ReservationConflictException {
+        try {
+            return result.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ReservationConflictException conflict)
+                throw conflict;
+            if (ex.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String fingerprintOf(ReservationDTO reservationDTO) {
+        //No site and site 1 are the same booking, so they must not count as a reuse of the key
+        long siteId = Objects.requireNonNullElse(reservationDTO.getSiteId(), CampsiteSites.DEFAULT_SITE_ID);
+        String request = String.join("\n", String.valueOf(siteId), reservationDTO.getCamperFullName(), reservationDTO.getCamperEmail(),
+                String.valueOf(reservationDTO.getStartDate()), String.valueOf(reservationDTO.getEndDate()));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(request.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private record Entry(String requestFingerprint, long expiresAtMillis, CompletableFuture<ReservationDTO> result) {
+    }
+}
@@ -0,0 +1,75 @@
+package com.khattab.islandcampsitereservation.idempotency;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.exception.IdempotencyKeyReuseException;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.occupancy.LockReservationDates;
+import com.khattab.islandcampsitereservation.repository.ReservationIdempotencyKeyRepository;
+import com.khattab.islandcampsitereservation.retry.RetryOnConcurrencyFailure;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.Optional;
+
+//Table half of the idempotency store: outlives restarts and memory eviction, and is shared by every instance
+@Component
+public class PersistedIdempotencyKeys {
+
+    private final ReservationIdempotencyKeyRepository reservationIdempotencyKeyRepository;
+    private final CampsiteReservationService campsiteReservationService;
+
+    @Autowired
+    public PersistedIdempotencyKeys(ReservationIdempotencyKeyRepository reservationIdempotencyKeyRepository,
+                                    CampsiteReservationService campsiteReservationService) {
+        this.reservationIdempotencyKeyRepository = reservationIdempotencyKeyRepository;
+        this.campsiteReservationService = campsiteReservationService;
+    }
+
+    //The response of a booking is the request with the new id, so a matching fingerprint is enough to rebuild it
+    public Optional<ReservationDTO> find(String idempotencyKey, String requestFingerprint, ReservationDTO reservationDTO) {
+        return reservationIdempotencyKeyRepository.findById(idempotencyKey)
+                                                  .filter(claimed -> claimed.getReservationId() != null)
+                                                  .map(claimed -> {
+                                                      if (!claimed.getRequestFingerprint().equals(requestFingerprint))
+                                                          throw reuseOf(idempotencyKey);
+                                                      return ReservationDTO.builder()
+                                                                           .id(claimed.getReservationId())
+                                                                           .siteId(Objects.requireNonNullElse(reservationDTO.getSiteId(),
+                                                                                   CampsiteSites.DEFAULT_SITE_ID))
+                                                                           .camperFullName(reservationDTO.getCamperFullName())
+                                                                           .camperEmail(reservationDTO.getCamperEmail())
+                                                                           .startDate(reservationDTO.getStartDate())
+                                                                           .endDate(reservationDTO.getEndDate())
+                                                                           .build();
+                                                  });
+    }
+
+    //The key is claimed before the dates: a duplicate on another instance waits on this row and then fails on the
+    //primary key, instead of reaching the overlap check and being told its own dates are taken
+    @RetryOnConcurrencyFailure
+    @LockReservationDates
+    @Transactional(rollbackOn = {ReservationConflictException.class, DataAccessException.class})
+    public ReservationDTO reserve(String idempotencyKey, String requestFingerprint,
+                                  ReservationDTO reservationDTO) throws ReservationConflictException {
+        reservationIdempotencyKeyRepository.claim(idempotencyKey, requestFingerprint, LocalDateTime.now());
+        ReservationDTO reservedDTO = campsiteReservationService.reserve(reservationDTO);
+        reservationIdempotencyKeyRepository.complete(idempotencyKey, reservedDTO.getId());
+        return reservedDTO;
+    }
+
+    @Transactional
+    public int deleteCreatedBefore(LocalDateTime createdAt) {
+        return reservationIdempotencyKeyRepository.deleteCreatedBefore(createdAt);
+    }
+
+    static IdempotencyKeyReuseException reuseOf(String idempotencyKey) {
+        return new IdempotencyKeyReuseException(String.format(
+                "Idempotency-Key %s was already used for a different reservation request", idempotencyKey));
+    }
+}
@@ -0,0 +1,235 @@
+package com.khattab.islandcampsitereservation.intake;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.exception.TooManyRequestsException;
+import com.khattab.islandcampsitereservation.occupancy.DayOccupancyIndex;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Optional group-commit front for reserve: requests arriving within a short window are settled against each other in
+ * arrival order and the winners are persisted together in one transaction.
+ *
+ * A batch that fails in an unexpected way fails its own callers only; the dispatcher carries on with the next one.
+ * Blocking callers wait at most campsite.reservation.intake.reply-timeout-ms for the dispatcher to take their request;
+ * once it has, the booking may be committed, so they wait for the outcome instead of giving up.
+ */
+@Component
+@ConditionalOnProperty(name = "campsite.reservation.intake.enabled", havingValue = "true")
+public class ReservationIntakeQueue {
+
+    private final CampsiteReservationService campsiteReservationService;
+    private final DayOccupancyIndex dayOccupancyIndex;
+    private final CampsiteSites campsiteSites;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final long replyTimeoutMillis;
+    private final BlockingQueue<PendingReservation> queue = new LinkedBlockingQueue<>();
+    private volatile boolean stopping;
+    private Thread dispatcher;
+
+    @Autowired
+    public ReservationIntakeQueue(CampsiteReservationService campsiteReservationService,
+                                  DayOccupancyIndex dayOccupancyIndex,
+                                  CampsiteSites campsiteSites,
+                                  @Value("${campsite.reservation.intake.batch-window-ms:5}") long batchWindowMillis,
+                                  @Value("${campsite.reservation.intake.max-batch-size:100}") int maxBatchSize,
+                                  @Value("${campsite.reservation.intake.reply-timeout-ms:10000}") long replyTimeoutMillis) {
+        this.campsiteReservationService = campsiteReservationService;
+        this.dayOccupancyIndex = dayOccupancyIndex;
+        this.campsiteSites = campsiteSites;
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.replyTimeoutMillis = replyTimeoutMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        dispatcher = new Thread(this::dispatchLoop, "reservation-intake");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+        dispatcher.interrupt();
+        List<PendingReservation> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandoned.forEach(pending -> pending.result.completeExceptionally(shuttingDown()));
+    }
+
+    public CompletableFuture<ReservationDTO> submit(ReservationDTO reservationDTO) {
+        return enqueue(reservationDTO).result;
+    }
+
+    private PendingReservation enqueue(ReservationDTO reservationDTO) {
+        PendingReservation pending = new PendingReservation(reservationDTO);
+        if (stopping) {
+            pending.result.completeExceptionally(shuttingDown());
+            return pending;
+        }
+        queue.add(pending);
+        //stop may have drained the queue just before the add; nothing would ever take this request then
+        if (stopping && queue.remove(pending))
+            pending.result.completeExceptionally(shuttingDown());
+        return pending;
+    }
+
+    //Blocking form of submit for synchronous callers; surfaces the caller's own conflict as a checked exception again
+    public ReservationDTO reserve(ReservationDTO reservationDTO) throws ReservationConflictException {
+        PendingReservation pending = enqueue(reservationDTO);
+        try {
+            try {
+                return pending.result.get(replyTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                //Still queued: withdrawn before anything was written, so retrying is safe
+                if (pending.withdraw()) {
+                    pending.result.cancel(false);
+                    throw new TooManyRequestsException(String.format(
+                            "Reservation intake did not take the request within %d ms", replyTimeoutMillis), 1);
+                }
+                //Already taken by the dispatcher; its batch may still commit, so wait for the outcome instead of guessing
+                return pending.result.get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ReservationConflictException conflict)
+                throw conflict;
+            if (ex.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<PendingReservation> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingReservation next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+                dispatch(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.result.completeExceptionally(shuttingDown()));
+            } catch (Throwable ex) {
+                batch.forEach(pending -> pending.result.completeExceptionally(ex));
+            }
+        }
+    }
+
+    void dispatch(List<PendingReservation> batch) {
+        List<PendingReservation> winners = new ArrayList<>();
+        Map<Long, Map<LocalDate, Integer>> claimedSpotsBySite = new HashMap<>();
+        for (PendingReservation pending : batch) {
+            //Its caller gave up waiting, or it was already failed
+            if (!pending.take())
+                continue;
+            ReservationDTO reservationDTO = pending.reservationDTO;
+            long siteId;
+            try {
+                siteId = campsiteSites.require(reservationDTO.getSiteId());
+            } catch (RuntimeException ex) {
+                pending.result.completeExceptionally(ex);
+                continue;
+            }
+            Map<LocalDate, Integer> claimedSpots = claimedSpotsBySite.computeIfAbsent(siteId, newSiteId -> new HashMap<>());
+            List<LocalDate> nights = reservationDTO.getStartDate().datesUntil(reservationDTO.getEndDate().plusDays(1)).toList();
+            //Outside the index only this batch's own claims are known; the database settles the rest
+            int[] remainingSpots = dayOccupancyIndex.covers(siteId, reservationDTO.getStartDate(), reservationDTO.getEndDate())
+                    ? dayOccupancyIndex.getRemainingSpots(siteId, reservationDTO.getStartDate(), reservationDTO.getEndDate())
+                    : null;
+            boolean full = false;
+            for (int night = 0; night < nights.size() && !full; night++) {
+                int spots = remainingSpots != null ? remainingSpots[night] : campsiteSites.getSpotsPerNight();
+                full = claimedSpots.getOrDefault(nights.get(night), 0) >= spots;
+            }
+            if (full) {
+                pending.result.completeExceptionally(new ReservationConflictException(String.format(
+                        "Reservation conflict upon read with existing bookings. Cannot book from %s to %s",
+                        reservationDTO.getStartDate(), reservationDTO.getEndDate())));
+            } else {
+                nights.forEach(night -> claimedSpots.merge(night, 1, Integer::sum));
+                winners.add(pending);
+            }
+        }
+        if (winners.isEmpty())
+            return;
+
+        try {
+            List<ReservationDTO> reserved =
+                    campsiteReservationService.reserveAll(winners.stream().map(pending -> pending.reservationDTO).toList());
+            for (int i = 0; i < winners.size(); i++) {
+                winners.get(i).result.complete(reserved.get(i));
+            }
+        } catch (ReservationConflictException ex) {
+            //A night was taken outside this batch (another instance or the direct path); settle each winner on its own
+            winners.forEach(this::reserveIndividually);
+        } catch (RuntimeException ex) {
+            winners.forEach(pending -> pending.result.completeExceptionally(ex));
+        }
+    }
+
+    private static IllegalStateException shuttingDown() {
+        return new IllegalStateException("Reservation intake is shutting down");
+    }
+
+    private void reserveIndividually(PendingReservation pending) {
+        try {
+            pending.result.complete(campsiteReservationService.reserve(pending.reservationDTO));
+        } catch (ReservationConflictException | RuntimeException ex) {
+            pending.result.completeExceptionally(ex);
+        }
+    }
+
+    static final class PendingReservation {
+        private final ReservationDTO reservationDTO;
+        private final CompletableFuture<ReservationDTO> result = new CompletableFuture<>();
+        //Set once by whichever comes first: the dispatcher taking the request or its caller withdrawing it
+        private final AtomicBoolean decided = new AtomicBoolean();
+
+        PendingReservation(ReservationDTO reservationDTO) {
+            this.reservationDTO = reservationDTO;
+        }
+
+        boolean take() {
+            return decided.compareAndSet(false, true) && !result.isDone();
+        }
+
+        boolean withdraw() {
+            return decided.compareAndSet(false, true);
+        }
+
+        CompletableFuture<ReservationDTO> getResult() {
+            return result;
+        }
+    }
+}
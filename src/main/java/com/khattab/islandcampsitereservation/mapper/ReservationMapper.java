@@ -0,0 +1,28 @@
+package com.khattab.islandcampsitereservation.mapper;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import org.springframework.stereotype.Component;
+
+//Plain field copies; replaces ModelMapper's reflective property matching on the write path
+@Component
+public class ReservationMapper {
+
+    public Reservation toEntity(ReservationDTO reservationDTO) {
+        return new Reservation(reservationDTO.getId(),
+                reservationDTO.getSiteId(),
+                reservationDTO.getCamperFullName(),
+                reservationDTO.getCamperEmail(),
+                reservationDTO.getStartDate(),
+                reservationDTO.getEndDate());
+    }
+
+    public ReservationDTO toDTO(Reservation reservation) {
+        return new ReservationDTO(reservation.getId(),
+                reservation.getSiteId(),
+                reservation.getCamperFullName(),
+                reservation.getCamperEmail(),
+                reservation.getStartDate(),
+                reservation.getEndDate());
+    }
+}
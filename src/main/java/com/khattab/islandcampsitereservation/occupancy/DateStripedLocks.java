@@ -0,0 +1,80 @@
+package com.khattab.islandcampsitereservation.occupancy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.LongStream;
+
+/**
+ * In-process locks striped by epoch day, with a separate set of stripes per site. Bookings for overlapping dates of a
+ * site queue here instead of racing into the database, and bookings for different sites never share a stripe;
+ * stripes are always taken in ascending index order so two ranges can never deadlock each other. Nobody waits longer
+ * than the timeout they pass, and the stripes are reentrant, so a thread that already holds them takes them again at once.
+ */
+@Component
+public class DateStripedLocks {
+
+    private final int stripeCount;
+    private final Map<Long, ReentrantLock[]> siteStripes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DateStripedLocks(@Value("${campsite.reservation.lock-stripes:64}") int stripeCount) {
+        this.stripeCount = stripeCount;
+    }
+
+    //Returns the action that releases every stripe taken, which must run on the locking thread, or null when some stripe
+    //stayed taken for timeoutMillis; nothing is held then. A timeout of 0 only takes stripes that are free or already held
+    public Runnable tryLock(long siteId, LocalDate startDate, LocalDate endDate, long timeoutMillis) {
+        ReentrantLock[] stripes = stripesOf(siteId);
+        int[] stripeIndexes = LongStream.rangeClosed(startDate.toEpochDay(), endDate.toEpochDay())
+                                        .mapToInt(epochDay -> (int) Math.floorMod(epochDay, (long) stripes.length))
+                                        .distinct()
+                                        .sorted()
+                                        .toArray();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (int taken = 0; taken < stripeIndexes.length; taken++) {
+            if (!tryLock(stripes[stripeIndexes[taken]], deadline)) {
+                unlock(stripes, stripeIndexes, taken);
+                return null;
+            }
+        }
+        return () -> unlock(stripes, stripeIndexes, stripeIndexes.length);
+    }
+
+    private static boolean tryLock(ReentrantLock stripe, long deadline) {
+        if (stripe.tryLock())
+            return true;
+        try {
+            return stripe.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void unlock(ReentrantLock[] stripes, int[] stripeIndexes, int taken) {
+        for (int i = taken - 1; i >= 0; i--) {
+            stripes[stripeIndexes[i]].unlock();
+        }
+    }
+
+    boolean isLocked(long siteId, LocalDate date) {
+        return stripesOf(siteId)[(int) Math.floorMod(date.toEpochDay(), (long) stripeCount)].isLocked();
+    }
+
+    private ReentrantLock[] stripesOf(long siteId) {
+        return siteStripes.computeIfAbsent(siteId, newSiteId -> {
+            ReentrantLock[] stripes = new ReentrantLock[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new ReentrantLock();
+            }
+            return stripes;
+        });
+    }
+}
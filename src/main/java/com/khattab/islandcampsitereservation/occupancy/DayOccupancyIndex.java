@@ -0,0 +1,277 @@
+package com.khattab.islandcampsitereservation.occupancy;
+
+import com.khattab.islandcampsitereservation.dto.AvailabilityIntervalDTO;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Bitmaps of full nights keyed by epoch day, one per site and one bit per day starting at the day it was last rebuilt,
+ * next to the number of spots booked on each of those days. A bit is set once a night has no spot left, so availability
+ * reads cost the same whatever the occupancy. Serves the bookable window from memory; ranges it does not cover fall back
+ * to the database. Every site has its own bitmap behind its own lock, so a booking only ever holds up readers of its own site.
+ *
+ * Rebuilt from the database at startup and again every midnight, which moves the window along with the date and picks up
+ * writes that never published a change, such as rows edited directly in the database.
+ */
+@Component
+public class DayOccupancyIndex {
+
+    private static final int REBUILD_ATTEMPTS = 5;
+
+    private final ReservationRepository reservationRepository;
+    private final int spotsPerNight;
+    private final int windowDays;
+    private final Clock clock;
+    private final Map<Long, SiteOccupancy> sites;
+    //Changes handed to onReservationChanged, and those it is done with; a rebuild compares both around its load
+    private final AtomicLong changesArrived = new AtomicLong();
+    private final AtomicLong changesApplied = new AtomicLong();
+
+    @Autowired
+    public DayOccupancyIndex(ReservationRepository reservationRepository,
+                             CampsiteSites campsiteSites,
+                             @Value("${campsite.availability.index-window-days:400}") int windowDays) {
+        this(reservationRepository, campsiteSites, windowDays, Clock.systemDefaultZone());
+    }
+
+    DayOccupancyIndex(ReservationRepository reservationRepository, CampsiteSites campsiteSites, int windowDays, Clock clock) {
+        this.reservationRepository = reservationRepository;
+        this.spotsPerNight = campsiteSites.getSpotsPerNight();
+        this.windowDays = windowDays;
+        this.clock = clock;
+        this.sites = campsiteSites.getSiteIds().stream()
+                                  .collect(Collectors.toUnmodifiableMap(siteId -> siteId, siteId -> new SiteOccupancy()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 0 0 * * *")
+    public void rebuild() {
+        //Loaded without the site locks and kept only if no change arrived meanwhile: a change committed before the load is
+        //already in it, so applying that change on top of the snapshot would count its nights twice
+        for (int attempt = 0; attempt < REBUILD_ATTEMPTS; attempt++) {
+            long changesBefore = changesArrived.get();
+            LocalDate today = LocalDate.now(clock);
+            List<ReservationDateRange> reservations = reservationRepository.findDateRangesByEndDateGreaterThanEqual(today);
+            boolean loaded = withEverySiteLocked(() -> {
+                if (changesApplied.get() != changesBefore || changesArrived.get() != changesBefore)
+                    return false;
+                load(today, reservations);
+                return true;
+            });
+            if (loaded)
+                return;
+        }
+        //Changes keep coming; load under the locks instead. One committed just before the load may then be counted twice
+        //until the next rebuild, while the database still settles every booking
+        withEverySiteLocked(() -> {
+            LocalDate today = LocalDate.now(clock);
+            load(today, reservationRepository.findDateRangesByEndDateGreaterThanEqual(today));
+            return true;
+        });
+    }
+
+    //Runs ahead of other after-commit work so the date locks of a booking are only released once the index shows it
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationChanged(ReservationChangedEvent event) {
+        changesArrived.incrementAndGet();
+        SiteOccupancy site = sites.get(event.getSiteId());
+        if (site == null) {
+            changesApplied.incrementAndGet();
+            return;
+        }
+        site.lock.writeLock().lock();
+        try {
+            if (site.words == null)
+                return;
+            if (event.releasesDates())
+                site.addSpots(event.getPreviousStartDate(), event.getPreviousEndDate(), -1);
+            if (event.takesDates())
+                site.addSpots(event.getStartDate(), event.getEndDate(), 1);
+        } finally {
+            changesApplied.incrementAndGet();
+            site.lock.writeLock().unlock();
+        }
+    }
+
+    public boolean covers(long siteId, LocalDate startDate, LocalDate endDate) {
+        SiteOccupancy site = sites.get(siteId);
+        if (site == null)
+            return false;
+        site.lock.readLock().lock();
+        try {
+            return site.words != null
+                    && startDate.toEpochDay() >= site.baseEpochDay
+                    && endDate.toEpochDay() < site.baseEpochDay + windowDays;
+        } finally {
+            site.lock.readLock().unlock();
+        }
+    }
+
+    //Callers must check covers() first; both dates are inclusive. Free means at least one spot left on every night
+    public boolean isFree(long siteId, LocalDate startDate, LocalDate endDate) {
+        SiteOccupancy site = sites.get(siteId);
+        site.lock.readLock().lock();
+        try {
+            int from = (int) (startDate.toEpochDay() - site.baseEpochDay);
+            int to = (int) (endDate.toEpochDay() - site.baseEpochDay);
+            for (int wordIndex = from >>> 6; wordIndex <= to >>> 6; wordIndex++) {
+                if ((site.words[wordIndex] & rangeMask(wordIndex, from, to)) != 0)
+                    return false;
+            }
+            return true;
+        } finally {
+            site.lock.readLock().unlock();
+        }
+    }
+
+    //Callers must check covers() first; the result is inclusive of both dates
+    public List<LocalDate> getFreeDates(long siteId, LocalDate startDate, LocalDate endDate) {
+        SiteOccupancy site = sites.get(siteId);
+        site.lock.readLock().lock();
+        try {
+            int from = (int) (startDate.toEpochDay() - site.baseEpochDay);
+            int to = (int) (endDate.toEpochDay() - site.baseEpochDay);
+            List<LocalDate> freeDates = new ArrayList<>(to - from + 1);
+            for (int wordIndex = from >>> 6; wordIndex <= to >>> 6; wordIndex++) {
+                long free = ~site.words[wordIndex] & rangeMask(wordIndex, from, to);
+                while (free != 0) {
+                    int day = (wordIndex << 6) + Long.numberOfTrailingZeros(free);
+                    freeDates.add(LocalDate.ofEpochDay(site.baseEpochDay + day));
+                    free &= free - 1;
+                }
+            }
+            return freeDates;
+        } finally {
+            site.lock.readLock().unlock();
+        }
+    }
+
+    //Callers must check covers() first; runs of free days, both ends of each inclusive
+    public List<AvailabilityIntervalDTO> getFreeIntervals(long siteId, LocalDate startDate, LocalDate endDate) {
+        SiteOccupancy site = sites.get(siteId);
+        site.lock.readLock().lock();
+        try {
+            int from = (int) (startDate.toEpochDay() - site.baseEpochDay);
+            int to = (int) (endDate.toEpochDay() - site.baseEpochDay);
+            List<AvailabilityIntervalDTO> freeIntervals = new ArrayList<>();
+            int freeDay = site.nextDay(from, to, false);
+            while (freeDay <= to) {
+                int bookedDay = site.nextDay(freeDay, to, true);
+                freeIntervals.add(new AvailabilityIntervalDTO(LocalDate.ofEpochDay(site.baseEpochDay + freeDay),
+                                                              LocalDate.ofEpochDay(site.baseEpochDay + bookedDay - 1)));
+                freeDay = site.nextDay(bookedDay, to, false);
+            }
+            return freeIntervals;
+        } finally {
+            site.lock.readLock().unlock();
+        }
+    }
+
+    //Callers must check covers() first; one entry per day of the range, both dates inclusive
+    public int[] getRemainingSpots(long siteId, LocalDate startDate, LocalDate endDate) {
+        SiteOccupancy site = sites.get(siteId);
+        site.lock.readLock().lock();
+        try {
+            int from = (int) (startDate.toEpochDay() - site.baseEpochDay);
+            int[] remainingSpots = new int[(int) (endDate.toEpochDay() - startDate.toEpochDay()) + 1];
+            for (int day = 0; day < remainingSpots.length; day++)
+                remainingSpots[day] = Math.max(spotsPerNight - site.bookedSpots[from + day], 0);
+            return remainingSpots;
+        } finally {
+            site.lock.readLock().unlock();
+        }
+    }
+
+    //Taken in site order, and all at once, because one query loads every site
+    private boolean withEverySiteLocked(BooleanSupplier action) {
+        List<SiteOccupancy> lockedSites = new TreeMap<>(sites).values().stream().toList();
+        lockedSites.forEach(site -> site.lock.writeLock().lock());
+        try {
+            return action.getAsBoolean();
+        } catch (RuntimeException ex) {
+            lockedSites.forEach(site -> site.words = null);
+            throw ex;
+        } finally {
+            lockedSites.forEach(site -> site.lock.writeLock().unlock());
+        }
+    }
+
+    //Callers hold every site's write lock
+    private void load(LocalDate today, List<ReservationDateRange> reservations) {
+        for (SiteOccupancy site : sites.values()) {
+            site.baseEpochDay = today.toEpochDay();
+            site.words = new long[(windowDays + Long.SIZE - 1) / Long.SIZE];
+            site.bookedSpots = new int[windowDays];
+        }
+        for (ReservationDateRange reservation : reservations) {
+            SiteOccupancy site = sites.get(reservation.getSiteId());
+            if (site != null)
+                site.addSpots(reservation.getStartDate(), reservation.getEndDate(), 1);
+        }
+    }
+
+    //Bits of the given word that fall within the inclusive day range [from, to]
+    private static long rangeMask(int wordIndex, int from, int to) {
+        int wordStart = wordIndex << 6;
+        long mask = -1L;
+        if (from > wordStart)
+            mask &= -1L << (from - wordStart);
+        if (to < wordStart + 63)
+            mask &= -1L >>> (63 - (to - wordStart));
+        return mask;
+    }
+
+    private final class SiteOccupancy {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private long baseEpochDay;
+        private long[] words;
+        private int[] bookedSpots;
+
+        //A stay is a handful of nights, so the days are walked one by one
+        private void addSpots(LocalDate startDate, LocalDate endDate, int spots) {
+            int from = (int) Math.max(startDate.toEpochDay() - baseEpochDay, 0);
+            int to = (int) Math.min(endDate.toEpochDay() - baseEpochDay, windowDays - 1L);
+            for (int day = from; day <= to; day++) {
+                bookedSpots[day] += spots;
+                long bit = 1L << day;
+                words[day >>> 6] = bookedSpots[day] >= spotsPerNight ? words[day >>> 6] | bit : words[day >>> 6] & ~bit;
+            }
+        }
+
+        //First day in [from, to] that is full (or free), or to + 1 when there is none
+        private int nextDay(int from, int to, boolean booked) {
+            if (from > to)
+                return to + 1;
+            for (int wordIndex = from >>> 6; wordIndex <= to >>> 6; wordIndex++) {
+                long candidates = (booked ? words[wordIndex] : ~words[wordIndex]) & rangeMask(wordIndex, from, to);
+                if (candidates != 0)
+                    return (wordIndex << 6) + Long.numberOfTrailingZeros(candidates);
+            }
+            return to + 1;
+        }
+    }
+}
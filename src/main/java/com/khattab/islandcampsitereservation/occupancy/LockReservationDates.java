@@ -0,0 +1,15 @@
+package com.khattab.islandcampsitereservation.occupancy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//Marks a transactional write whose date stripes ReservationDateLockAspect takes before the transaction starts: the dates
+//of its ReservationDTO argument, and with ofReservationId the current dates of the reservation whose id comes first
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LockReservationDates {
+
+    boolean ofReservationId() default false;
+}
@@ -0,0 +1,111 @@
+package com.khattab.islandcampsitereservation.occupancy;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes the date stripes of a {@link LockReservationDates} write between ConcurrencyFailureRetryAspect and the transaction
+ * interceptor, so a booker waiting for overlapping dates holds no pooled connection, and releases them once the
+ * transaction and its after-commit index update are done. A wait longer than campsite.reservation.lock-timeout-ms fails
+ * with CannotAcquireLockException, which is retried like a database lock wait timeout and answered with 503 when
+ * every attempt times out.
+ *
+ * The current dates of an existing reservation are read without a lock beforehand. The write checks them again under
+ * its row lock and, should they have changed in between, fails the attempt instead of waiting inside the transaction.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class ReservationDateLockAspect {
+
+    private final DateStripedLocks dateStripedLocks;
+    private final ReservationRepository reservationRepository;
+    private final CampsiteSites campsiteSites;
+    private final long lockTimeoutMillis;
+    private final Timer dateLockWait;
+
+    @Autowired
+    public ReservationDateLockAspect(DateStripedLocks dateStripedLocks,
+                                     ReservationRepository reservationRepository,
+                                     CampsiteSites campsiteSites,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${campsite.reservation.lock-timeout-ms:1000}") long lockTimeoutMillis) {
+        this.dateStripedLocks = dateStripedLocks;
+        this.reservationRepository = reservationRepository;
+        this.campsiteSites = campsiteSites;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        this.dateLockWait = Timer.builder("campsite.reservation.lock.wait")
+                                 .description("Time spent waiting for the locks that guard a reservation write")
+                                 .tag("lock", "date-stripes")
+                                 .publishPercentileHistogram()
+                                 .register(meterRegistry);
+    }
+
+    @Around("@annotation(lockReservationDates)")
+    public Object lockDates(ProceedingJoinPoint joinPoint, LockReservationDates lockReservationDates) throws Throwable {
+        Optional<LockedDates> lockedDates = lockedDatesOf(joinPoint.getArgs(), lockReservationDates.ofReservationId());
+        if (lockedDates.isEmpty())
+            return joinPoint.proceed();
+
+        LockedDates dates = lockedDates.get();
+        long startedAt = System.nanoTime();
+        Runnable unlockDates = dateStripedLocks.tryLock(dates.siteId(), dates.startDate(), dates.endDate(), lockTimeoutMillis);
+        dateLockWait.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        if (unlockDates == null)
+            throw new CannotAcquireLockException(String.format(
+                    "Timed out after %d ms waiting for other bookings of site %d from %s to %s",
+                    lockTimeoutMillis, dates.siteId(), dates.startDate(), dates.endDate()));
+        try {
+            return joinPoint.proceed();
+        } finally {
+            unlockDates.run();
+        }
+    }
+
+    //The requested dates, widened to the reservation's current ones; empty when there is nothing to lock and the write
+    //can fail on its own, e.g. for an unknown reservation id
+    private Optional<LockedDates> lockedDatesOf(Object[] args, boolean ofReservationId) {
+        Optional<ReservationDTO> requested = Arrays.stream(args)
+                                                   .filter(ReservationDTO.class::isInstance)
+                                                   .map(ReservationDTO.class::cast)
+                                                   .filter(reservationDTO -> reservationDTO.getStartDate() != null
+                                                           && reservationDTO.getEndDate() != null)
+                                                   .findFirst();
+        if (!ofReservationId)
+            return requested.map(reservationDTO -> new LockedDates(campsiteSites.require(reservationDTO.getSiteId()),
+                    reservationDTO.getStartDate(), reservationDTO.getEndDate()));
+
+        Optional<ReservationDateRange> current = reservationRepository.findDateRangeById(Long.parseLong((String) args[0]));
+        if (current.isEmpty())
+            return Optional.empty();
+        LockedDates currentDates = new LockedDates(current.get().getSiteId(), current.get().getStartDate(), current.get().getEndDate());
+        return Optional.of(requested.map(currentDates::widenedTo).orElse(currentDates));
+    }
+
+    private record LockedDates(long siteId, LocalDate startDate, LocalDate endDate) {
+
+        private LockedDates widenedTo(ReservationDTO reservationDTO) {
+            return new LockedDates(siteId,
+                    startDate.isBefore(reservationDTO.getStartDate()) ? startDate : reservationDTO.getStartDate(),
+                    endDate.isAfter(reservationDTO.getEndDate()) ? endDate : reservationDTO.getEndDate());
+        }
+    }
+}
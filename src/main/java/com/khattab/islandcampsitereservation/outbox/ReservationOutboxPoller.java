@@ -0,0 +1,61 @@
+package com.khattab.islandcampsitereservation.outbox;
+
+import com.khattab.islandcampsitereservation.entity.ReservationOutboxEvent;
+import com.khattab.islandcampsitereservation.repository.ReservationOutboxRepository;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+//Hands unpublished outbox rows to the registered sinks in batches and deletes published rows once they are older than
+//campsite.outbox.retention-hours. With no sinks ReservationOutboxWriter records nothing, so there is nothing to do
+@Component
+public class ReservationOutboxPoller {
+
+    static final int PURGE_BATCH_SIZE = 1000;
+
+    private final ReservationOutboxRepository reservationOutboxRepository;
+    private final List<ReservationOutboxSink> sinks;
+    private final int batchSize;
+    private final long retentionHours;
+
+    @Autowired
+    public ReservationOutboxPoller(ReservationOutboxRepository reservationOutboxRepository,
+                                   List<ReservationOutboxSink> sinks,
+                                   @Value("${campsite.outbox.batch-size:100}") int batchSize,
+                                   @Value("${campsite.outbox.retention-hours:168}") long retentionHours) {
+        this.reservationOutboxRepository = reservationOutboxRepository;
+        this.sinks = sinks;
+        this.batchSize = batchSize;
+        this.retentionHours = retentionHours;
+    }
+
+    @Scheduled(fixedDelayString = "${campsite.outbox.poll-interval-ms:1000}")
+    @Transactional
+    public void publishPending() {
+        if (sinks.isEmpty())
+            return;
+        List<ReservationOutboxEvent> batch = reservationOutboxRepository.findUnpublishedForUpdate(PageRequest.of(0, batchSize));
+        if (batch.isEmpty())
+            return;
+        //A throwing sink rolls the transaction back, leaving the whole batch unpublished for the next poll
+        sinks.forEach(sink -> sink.publish(batch));
+        LocalDateTime publishedAt = LocalDateTime.now();
+        batch.forEach(event -> event.setPublishedAt(publishedAt));
+    }
+
+    //Each batch is deleted in its own transaction, so a backlog of old rows never holds their locks all at once
+    @Scheduled(fixedDelayString = "${campsite.outbox.purge-interval-ms:3600000}")
+    public void purgePublished() {
+        LocalDateTime publishedBefore = LocalDateTime.now().minusHours(retentionHours);
+        int deleted;
+        do {
+            deleted = reservationOutboxRepository.deletePublishedBefore(publishedBefore, PURGE_BATCH_SIZE);
+        } while (deleted == PURGE_BATCH_SIZE);
+    }
+}
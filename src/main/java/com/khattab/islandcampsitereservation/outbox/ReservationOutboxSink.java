@@ -0,0 +1,14 @@
+package com.khattab.islandcampsitereservation.outbox;
+
+import com.khattab.islandcampsitereservation.entity.ReservationOutboxEvent;
+
+import java.util.List;
+
+/**
+ * Local consumer of the reservation outbox; every bean of this type receives each batch in id order.
+ * Delivery is at least once: a batch is retried on the next poll if any sink throws, so sinks must tolerate repeats.
+ */
+public interface ReservationOutboxSink {
+
+    void publish(List<ReservationOutboxEvent> events);
+}
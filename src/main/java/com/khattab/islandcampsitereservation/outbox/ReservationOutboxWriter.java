@@ -0,0 +1,38 @@
+package com.khattab.islandcampsitereservation.outbox;
+
+import com.khattab.islandcampsitereservation.entity.ReservationOutboxEvent;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import com.khattab.islandcampsitereservation.repository.ReservationOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+//Before commit, inside the writing transaction: the outbox row commits or rolls back together with the change it records.
+//Rows are only written while a ReservationOutboxSink is registered; with none, nothing would ever publish or purge them
+@Component
+public class ReservationOutboxWriter {
+
+    private final ReservationOutboxRepository reservationOutboxRepository;
+    private final boolean enabled;
+
+    @Autowired
+    public ReservationOutboxWriter(ReservationOutboxRepository reservationOutboxRepository, List<ReservationOutboxSink> sinks) {
+        this.reservationOutboxRepository = reservationOutboxRepository;
+        this.enabled = !sinks.isEmpty();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onReservationChanged(ReservationChangedEvent event) {
+        append(List.of(ReservationOutboxEvent.of(event, LocalDateTime.now())));
+    }
+
+    //For changes made without a ReservationChangedEvent; must be called inside the transaction making them
+    public void append(List<ReservationOutboxEvent> events) {
+        if (enabled)
+            reservationOutboxRepository.saveAll(events);
+    }
+}
@@ -0,0 +1,13 @@
+package com.khattab.islandcampsitereservation.projection;
+
+import java.time.LocalDate;
+
+public interface ReservationDateRange {
+    Long getId();
+
+    Long getSiteId();
+
+    LocalDate getStartDate();
+
+    LocalDate getEndDate();
+}
@@ -0,0 +1,48 @@
+package com.khattab.islandcampsitereservation.repository;
+
+import com.khattab.islandcampsitereservation.entity.NightCapacity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+@Repository
+public interface NightCapacityRepository extends JpaRepository<NightCapacity, NightCapacity.Key> {
+
+    //Returns how many nights had a spot to give; fewer than the stay's nights means the caller has to roll back
+    @Modifying
+    @Query("UPDATE NightCapacity N SET N.remaining = N.remaining - 1 " +
+            "WHERE N.siteId = :siteId AND N.night BETWEEN :startDate AND :endDate AND N.remaining >= 1")
+    int takeSpot(long siteId, LocalDate startDate, LocalDate endDate);
+
+    @Modifying
+    @Query("UPDATE NightCapacity N SET N.remaining = N.remaining + 1 " +
+            "WHERE N.siteId = :siteId AND N.night BETWEEN :startDate AND :endDate")
+    int releaseSpot(long siteId, LocalDate startDate, LocalDate endDate);
+
+    @Query("SELECT MAX(N.night) FROM NightCapacity N WHERE N.siteId = :siteId")
+    LocalDate findLastNight(long siteId);
+
+    //Spots already taken stay taken when the configured capacity changes
+    @Transactional
+    @Modifying
+    @Query("UPDATE NightCapacity N SET N.remaining = N.remaining + :capacity - N.capacity, N.capacity = :capacity " +
+            "WHERE N.capacity <> :capacity")
+    int resize(int capacity);
+
+    //Past nights can no longer be booked or released, so their rows are dropped to keep the table the size of the window
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM NightCapacity N WHERE N.night < :night")
+    int deleteNightsBefore(LocalDate night);
+
+    //A plain INSERT, not save(): merging an assigned key would overwrite a night that another instance just provisioned
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO night_capacity (site_id, night, capacity, remaining) " +
+            "VALUES (:siteId, :night, :capacity, :remaining)", nativeQuery = true)
+    void provision(long siteId, LocalDate night, int capacity, int remaining);
+}
@@ -0,0 +1,21 @@
+package com.khattab.islandcampsitereservation.repository;
+
+import com.khattab.islandcampsitereservation.entity.ArchivedReservation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ReservationArchiveRepository extends JpaRepository<ArchivedReservation, Long> {
+
+    //Copied inside the database, so a batch is one statement however many reservations it holds
+    @Modifying
+    @Query(value = "INSERT INTO reservation_archive (id, site_id, camper_full_name, camper_email, start_date, end_date, archived_at) " +
+            "SELECT id, site_id, camper_full_name, camper_email, start_date, end_date, :archivedAt " +
+            "FROM reservation WHERE id IN (:reservationIds)", nativeQuery = true)
+    int copyFromReservations(List<Long> reservationIds, LocalDateTime archivedAt);
+}
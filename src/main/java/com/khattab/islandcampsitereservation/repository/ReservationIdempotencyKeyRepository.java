@@ -0,0 +1,27 @@
+package com.khattab.islandcampsitereservation.repository;
+
+import com.khattab.islandcampsitereservation.entity.ReservationIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ReservationIdempotencyKeyRepository extends JpaRepository<ReservationIdempotencyKey, String> {
+
+    //A plain INSERT, not save(): merging an assigned key would overwrite a claim that another request already holds
+    @Modifying
+    @Query(value = "INSERT INTO reservation_idempotency_key (idempotency_key, request_fingerprint, created_at) " +
+            "VALUES (:idempotencyKey, :requestFingerprint, :createdAt)", nativeQuery = true)
+    void claim(String idempotencyKey, String requestFingerprint, LocalDateTime createdAt);
+
+    @Modifying
+    @Query("UPDATE ReservationIdempotencyKey K SET K.reservationId = :reservationId WHERE K.idempotencyKey = :idempotencyKey")
+    void complete(String idempotencyKey, Long reservationId);
+
+    @Modifying
+    @Query("DELETE FROM ReservationIdempotencyKey K WHERE K.createdAt < :createdAt")
+    int deleteCreatedBefore(LocalDateTime createdAt);
+}
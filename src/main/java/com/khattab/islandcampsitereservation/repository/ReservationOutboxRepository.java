@@ -0,0 +1,44 @@
+package com.khattab.islandcampsitereservation.repository;
+
+import com.khattab.islandcampsitereservation.entity.ReservationOutboxEvent;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReservationOutboxRepository extends JpaRepository<ReservationOutboxEvent, Long> {
+
+    //Lock timeout -2 is Hibernate's SKIP LOCKED: pollers on other instances take the next rows instead of waiting
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT E FROM ReservationOutboxEvent E WHERE E.publishedAt IS NULL ORDER BY E.id ASC")
+    List<ReservationOutboxEvent> findUnpublishedForUpdate(Pageable pageable);
+
+    //At most limit rows per call so each delete commits quickly; JPQL has no DELETE ... LIMIT, so the ids are read first
+    default int deletePublishedBefore(LocalDateTime publishedBefore, int limit) {
+        List<Long> ids = findIdsPublishedBefore(publishedBefore, PageRequest.of(0, limit));
+        return ids.isEmpty() ? 0 : deleteByIds(ids);
+    }
+
+    //A range of idx_reservation_outbox_published_id
+    @Transactional(readOnly = true)
+    @Query("SELECT E.id FROM ReservationOutboxEvent E WHERE E.publishedAt < :publishedBefore ORDER BY E.publishedAt ASC")
+    List<Long> findIdsPublishedBefore(LocalDateTime publishedBefore, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ReservationOutboxEvent E WHERE E.id IN :ids")
+    int deleteByIds(Collection<Long> ids);
+}
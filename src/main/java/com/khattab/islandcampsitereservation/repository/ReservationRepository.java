@@ -1,14 +1,22 @@
 package com.khattab.islandcampsitereservation.repository;
 
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
 import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.validation.CustomDatesValidator;
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,10 +27,78 @@ public interface ReservationRepository extends JpaRepository<Reservation, Long>
     @Query("SELECT R FROM Reservation R WHERE R.id = :id")
     Optional<Reservation> findByIdWithLock(Long id);
 
+    //Stays that ended before the given day, oldest first, for ReservationArchiver. Lock timeout -2 is Hibernate's SKIP LOCKED:
+    //a reservation being modified or cancelled is left for the next batch, and archivers on other instances take other rows
     @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query("SELECT R FROM Reservation R " +
-            "WHERE R.startDate <= :endDate " +
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT R FROM Reservation R WHERE R.endDate < :day ORDER BY R.endDate ASC")
+    List<Reservation> findEndedBeforeForUpdate(LocalDate day, Pageable pageable);
+
+    //Non-locking counterparts for readers; read-only transactions can be routed to a replica by the driver
+    default List<ReservationDateRange> findReservedDateRanges(long siteId, LocalDate startDate, LocalDate endDate) {
+        return findReservedDateRangesStartingBetween(siteId,
+                startDate.minusDays(CustomDatesValidator.MAX_RESERVATION_LENGTH_DAYS), endDate, startDate);
+    }
+
+    //No stay is longer than the validator allows, so bounding startDate from below turns the overlap check into a short index range scan
+    @Transactional(readOnly = true)
+    @Query("SELECT R.id AS id, R.siteId AS siteId, R.startDate AS startDate, R.endDate AS endDate FROM Reservation R " +
+            "WHERE R.siteId = :siteId " +
+            "AND R.startDate BETWEEN :earliestStartDate AND :endDate " +
             "AND R.endDate >= :startDate " +
             "ORDER BY R.startDate ASC ")
-    List<Reservation> findOverlappingReservationsForUpdate(LocalDate startDate, LocalDate endDate);
+    List<ReservationDateRange> findReservedDateRangesStartingBetween(long siteId, LocalDate earliestStartDate,
+                                                                     LocalDate endDate, LocalDate startDate);
+
+    //The same bounded range scan for several sites in one round trip, one index range per site
+    default List<ReservationDateRange> findReservedDateRangesOfSites(Collection<Long> siteIds, LocalDate startDate, LocalDate endDate) {
+        return findReservedDateRangesOfSitesStartingBetween(siteIds,
+                startDate.minusDays(CustomDatesValidator.MAX_RESERVATION_LENGTH_DAYS), endDate, startDate);
+    }
+
+    @Transactional(readOnly = true)
+    @Query("SELECT R.id AS id, R.siteId AS siteId, R.startDate AS startDate, R.endDate AS endDate FROM Reservation R " +
+            "WHERE R.siteId IN :siteIds " +
+            "AND R.startDate BETWEEN :earliestStartDate AND :endDate " +
+            "AND R.endDate >= :startDate " +
+            "ORDER BY R.siteId ASC, R.startDate ASC ")
+    List<ReservationDateRange> findReservedDateRangesOfSitesStartingBetween(Collection<Long> siteIds, LocalDate earliestStartDate,
+                                                                            LocalDate endDate, LocalDate startDate);
+
+    @Transactional(readOnly = true)
+    List<ReservationDateRange> findDateRangesByEndDateGreaterThanEqual(LocalDate endDate);
+
+    @Transactional(readOnly = true)
+    Optional<ReservationDateRange> findDateRangeById(Long id);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.khattab.islandcampsitereservation.dto.ReservationDTO(" +
+            "R.id, R.siteId, R.camperFullName, R.camperEmail, R.startDate, R.endDate) " +
+            "FROM Reservation R WHERE R.id = :id")
+    Optional<ReservationDTO> findReservationById(Long id);
+
+    //Keyset pages in (startDate, id) order, starting after (seekStartDate, seekId). The lower bound on startDate lets
+    //a deep page seek straight to where the previous one ended instead of skipping the rows before it
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.khattab.islandcampsitereservation.dto.ReservationDTO(" +
+            "R.id, R.siteId, R.camperFullName, R.camperEmail, R.startDate, R.endDate) " +
+            "FROM Reservation R " +
+            "WHERE R.startDate BETWEEN :seekStartDate AND :endDate " +
+            "AND (R.startDate > :seekStartDate OR R.id > :seekId) " +
+            "AND R.endDate >= :startDate " +
+            "ORDER BY R.startDate ASC, R.id ASC")
+    List<ReservationDTO> findReservationPage(LocalDate seekStartDate, long seekId, LocalDate startDate,
+                                             LocalDate endDate, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.khattab.islandcampsitereservation.dto.ReservationDTO(" +
+            "R.id, R.siteId, R.camperFullName, R.camperEmail, R.startDate, R.endDate) " +
+            "FROM Reservation R " +
+            "WHERE R.camperEmail = :camperEmail " +
+            "AND R.startDate BETWEEN :seekStartDate AND :endDate " +
+            "AND (R.startDate > :seekStartDate OR R.id > :seekId) " +
+            "AND R.endDate >= :startDate " +
+            "ORDER BY R.startDate ASC, R.id ASC")
+    List<ReservationDTO> findReservationPageByCamperEmail(String camperEmail, LocalDate seekStartDate, long seekId,
+                                                          LocalDate startDate, LocalDate endDate, Pageable pageable);
 }
@@ -1,9 +1,20 @@
 package com.khattab.islandcampsitereservation.restcontrolleradvice;
 
 import com.khattab.islandcampsitereservation.errorresponse.ErrorResponse;
+import com.khattab.islandcampsitereservation.exception.IdempotencyKeyReuseException;
+import com.khattab.islandcampsitereservation.exception.OperationsAccessDeniedException;
 import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -13,9 +24,26 @@ import java.time.LocalDateTime;
 @RestControllerAdvice
 public class RestControllerExceptionHandler {
 
+    //Registered once so counting an error response is a single increment
+    private final Counter notFound;
+    private final Counter conflicts;
+    private final Counter concurrentEdits;
+    private final Counter lockAcquisitionFailures;
+    private final Counter idempotencyKeyReuses;
+
+    @Autowired
+    public RestControllerExceptionHandler(MeterRegistry meterRegistry) {
+        this.notFound = errorCounter(meterRegistry, "not-found");
+        this.conflicts = errorCounter(meterRegistry, "conflict");
+        this.concurrentEdits = errorCounter(meterRegistry, "concurrent-edit");
+        this.lockAcquisitionFailures = errorCounter(meterRegistry, "lock-acquisition");
+        this.idempotencyKeyReuses = errorCounter(meterRegistry, "idempotency-key-reuse");
+    }
+
     @ExceptionHandler(value = {EntityNotFoundException.class})
     @ResponseStatus(value = HttpStatus.NOT_FOUND)
     public ErrorResponse resourceNotFoundException(EntityNotFoundException ex) {
+        notFound.increment();
         return ErrorResponse.builder()
                             .status(HttpStatus.NOT_FOUND.value())
                             .error(HttpStatus.NOT_FOUND.getReasonPhrase())
@@ -38,6 +66,7 @@ public class RestControllerExceptionHandler {
     @ExceptionHandler(value = {ReservationConflictException.class})
     @ResponseStatus(value = HttpStatus.CONFLICT)
     public ErrorResponse reservationConflictException(ReservationConflictException ex) {
+        conflicts.increment();
         return ErrorResponse.builder()
                             .status(HttpStatus.CONFLICT.value())
                             .error(HttpStatus.CONFLICT.getReasonPhrase())
@@ -46,6 +75,83 @@ public class RestControllerExceptionHandler {
                             .build();
     }
 
+    //Still losing the optimistic-lock race after every retry means someone else keeps editing the same reservation
+    @ExceptionHandler(value = {OptimisticLockingFailureException.class})
+    @ResponseStatus(value = HttpStatus.CONFLICT)
+    public ErrorResponse optimisticLockingFailureException(OptimisticLockingFailureException ex) {
+        concurrentEdits.increment();
+        return ErrorResponse.builder()
+                            .status(HttpStatus.CONFLICT.value())
+                            .error(HttpStatus.CONFLICT.getReasonPhrase())
+                            .timestamp(LocalDateTime.now())
+                            .message("The reservation was changed by another request at the same time. Please try again.")
+                            .build();
+    }
+
+    //Lock waits that kept timing out or deadlocking through every retry are load, not a conflict with another booking
+    @ExceptionHandler(value = {PessimisticLockingFailureException.class})
+    public ResponseEntity<ErrorResponse> pessimisticLockingFailureException(PessimisticLockingFailureException ex) {
+        lockAcquisitionFailures.increment();
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                             .header(HttpHeaders.RETRY_AFTER, "1")
+                             .body(ErrorResponse.builder()
+                                                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                                                .error(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase())
+                                                .timestamp(LocalDateTime.now())
+                                                .message("The reservation could not be saved because the database is busy. Please try again.")
+                                                .build());
+    }
+
+    @ExceptionHandler(value = {IdempotencyKeyReuseException.class})
+    @ResponseStatus(value = HttpStatus.UNPROCESSABLE_ENTITY)
+    public ErrorResponse idempotencyKeyReuseException(IdempotencyKeyReuseException ex) {
+        idempotencyKeyReuses.increment();
+        return ErrorResponse.builder()
+                            .status(HttpStatus.UNPROCESSABLE_ENTITY.value())
+                            .error(HttpStatus.UNPROCESSABLE_ENTITY.getReasonPhrase())
+                            .timestamp(LocalDateTime.now())
+                            .message(ex.getMessage())
+                            .build();
+    }
+
+    //Admission control turned the request away before it reached the database; counted by campsite.admission.rejected
+    @ExceptionHandler(value = {TooManyRequestsException.class})
+    public ResponseEntity<ErrorResponse> tooManyRequestsException(TooManyRequestsException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                             .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                             .body(ErrorResponse.builder()
+                                                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                                                .error(HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase())
+                                                .timestamp(LocalDateTime.now())
+                                                .message(ex.getMessage())
+                                                .build());
+    }
+
+    //Without it the catch-all below would answer a GET on a path that only takes PATCH and DELETE with 500
+    @ExceptionHandler(value = {HttpRequestMethodNotSupportedException.class})
+    public ResponseEntity<ErrorResponse> methodNotSupportedException(HttpRequestMethodNotSupportedException ex) {
+        return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED)
+                             .headers(ex.getHeaders())
+                             .body(ErrorResponse.builder()
+                                                .status(HttpStatus.METHOD_NOT_ALLOWED.value())
+                                                .error(HttpStatus.METHOD_NOT_ALLOWED.getReasonPhrase())
+                                                .timestamp(LocalDateTime.now())
+                                                .message(ex.getMessage())
+                                                .build());
+    }
+
+    @ExceptionHandler(value = {OperationsAccessDeniedException.class})
+    public ResponseEntity<ErrorResponse> operationsAccessDeniedException(OperationsAccessDeniedException ex) {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                             .header(HttpHeaders.WWW_AUTHENTICATE, "Bearer")
+                             .body(ErrorResponse.builder()
+                                                .status(HttpStatus.UNAUTHORIZED.value())
+                                                .error(HttpStatus.UNAUTHORIZED.getReasonPhrase())
+                                                .timestamp(LocalDateTime.now())
+                                                .message(ex.getMessage())
+                                                .build());
+    }
+
     @ExceptionHandler({Exception.class, Throwable.class})
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleInternalServerError(Exception ex) {
@@ -57,4 +163,11 @@ public class RestControllerExceptionHandler {
                             .message("An unexpected error occurred. Please try again later.")
                             .build();
     }
+
+    private static Counter errorCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("campsite.api.errors")
+                      .description("Error responses by reason")
+                      .tag("reason", reason)
+                      .register(meterRegistry);
+    }
 }
@@ -0,0 +1,133 @@
+package com.khattab.islandcampsitereservation.retry;
+
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Re-runs methods annotated with {@link RetryOnConcurrencyFailure} when they fail for a reason that says nothing about
+ * the booking itself: a lost optimistic-lock race, a lock wait timeout, or being picked as a deadlock victim. Real
+ * overlaps surface as ReservationConflictException and are never retried. Ordered ahead of ReservationDateLockAspect
+ * and the transaction interceptor, so every attempt takes its date stripes again and gets its own transaction. Attempts are spaced by full-jitter exponential backoff,
+ * capped at campsite.reservation.retry.max-backoff-ms, so racing writers spread out instead of colliding again in lockstep.
+ *
+ * Publishes campsite.reservation.write (latency histogram per operation and outcome, retries included) and
+ * campsite.reservation.write.retries (per operation and cause).
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 2)
+public class ConcurrencyFailureRetryAspect {
+
+    private static final String DEADLOCK_SQL_STATE = "40001";
+    private static final int MYSQL_DEADLOCK_ERROR = 1213;
+
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    //Looked up by name instead of rebuilding a meter id on every call
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> retryCounters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ConcurrencyFailureRetryAspect(MeterRegistry meterRegistry,
+                                         @Value("${campsite.reservation.retry.max-attempts:3}") int maxAttempts,
+                                         @Value("${campsite.reservation.retry.initial-backoff-ms:10}") long initialBackoffMillis,
+                                         @Value("${campsite.reservation.retry.max-backoff-ms:200}") long maxBackoffMillis) {
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    @Around("@annotation(com.khattab.islandcampsitereservation.retry.RetryOnConcurrencyFailure)")
+    public Object retry(ProceedingJoinPoint joinPoint) throws Throwable {
+        String operation = joinPoint.getSignature().getName();
+        //Inside a caller's transaction the failure has already doomed that transaction, so only the caller can retry
+        boolean retryable = !TransactionSynchronizationManager.isActualTransactionActive();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    Object result = joinPoint.proceed();
+                    outcome = "success";
+                    return result;
+                } catch (ConcurrencyFailureException ex) {
+                    if (!retryable || attempt >= maxAttempts) {
+                        outcome = "retries-exhausted";
+                        throw ex;
+                    }
+                    retryCounter(operation, causeOf(ex)).increment();
+                    backOff(attempt, ex);
+                } catch (ReservationConflictException ex) {
+                    outcome = "conflict";
+                    throw ex;
+                }
+            }
+        } finally {
+            sample.stop(timer(operation, outcome));
+        }
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return timers.computeIfAbsent(operation + '/' + outcome,
+                key -> Timer.builder("campsite.reservation.write")
+                            .description("Reservation writes, including every retry")
+                            .tag("operation", operation)
+                            .tag("outcome", outcome)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry));
+    }
+
+    private Counter retryCounter(String operation, String cause) {
+        return retryCounters.computeIfAbsent(operation + '/' + cause,
+                key -> Counter.builder("campsite.reservation.write.retries")
+                              .description("Reservation write attempts repeated after a transient concurrency failure")
+                              .tag("operation", operation)
+                              .tag("cause", cause)
+                              .register(meterRegistry));
+    }
+
+    //Lock wait timeouts and deadlocks are both translated to pessimistic locking failures (CannotAcquireLockException),
+    //so the SQL state tells them apart
+    static String causeOf(ConcurrencyFailureException ex) {
+        if (ex instanceof OptimisticLockingFailureException)
+            return "optimistic-lock";
+        if (ex instanceof PessimisticLockingFailureException
+                && NestedExceptionUtils.getMostSpecificCause(ex) instanceof SQLException sqlException
+                && (DEADLOCK_SQL_STATE.equals(sqlException.getSQLState()) || sqlException.getErrorCode() == MYSQL_DEADLOCK_ERROR))
+            return "deadlock";
+        return "lock-timeout";
+    }
+
+    private void backOff(int attempt, RuntimeException failure) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw failure;
+        }
+    }
+}
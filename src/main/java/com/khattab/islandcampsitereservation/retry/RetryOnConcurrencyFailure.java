@@ -0,0 +1,12 @@
+package com.khattab.islandcampsitereservation.retry;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//Marks a transactional method that ConcurrencyFailureRetryAspect runs again, in a fresh transaction, after a lost lock or version race
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RetryOnConcurrencyFailure {
+}
@@ -1,17 +1,36 @@
 package com.khattab.islandcampsitereservation.service;
 
+import com.khattab.islandcampsitereservation.dto.AvailabilityBitmapDTO;
+import com.khattab.islandcampsitereservation.dto.AvailabilityCapacityDTO;
+import com.khattab.islandcampsitereservation.dto.AvailabilityIntervalDTO;
 import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationPageDTO;
 import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
 
 import java.time.LocalDate;
 import java.util.List;
 
 public interface CampsiteReservationService {
-    List<LocalDate> getAvailability(LocalDate startDate, LocalDate endDate);
+    //Availability of one site, or with a null siteId the nights on which at least one site has a spot left
+    List<LocalDate> getAvailability(Long siteId, LocalDate startDate, LocalDate endDate);
+
+    List<AvailabilityIntervalDTO> getAvailableIntervals(Long siteId, LocalDate startDate, LocalDate endDate);
+
+    AvailabilityBitmapDTO getAvailabilityBitmap(Long siteId, LocalDate startDate, LocalDate endDate);
+
+    List<AvailabilityCapacityDTO> getRemainingCapacity(Long siteId, LocalDate startDate, LocalDate endDate);
+
+    ReservationDTO getReservation(String reservationId);
+
+    //Reservations overlapping the dates, in (startDate, id) order; a null cursor asks for the first page
+    ReservationPageDTO listReservations(LocalDate startDate, LocalDate endDate, String camperEmail, String cursor, int limit);
 
     ReservationDTO reserve(ReservationDTO reservationDTO) throws ReservationConflictException;
 
+    //All or nothing: the reservations take spots from each other, and one full night rejects the whole list
+    List<ReservationDTO> reserveAll(List<ReservationDTO> reservationDTOs) throws ReservationConflictException;
+
     void cancelReservation(String reservationId);
 
-    ReservationDTO modifyReservation(String reservationId, ReservationDTO modifiedReservationDatesDTO);
+    ReservationDTO modifyReservation(String reservationId, ReservationDTO modifiedReservationDatesDTO) throws ReservationConflictException;
 }
@@ -0,0 +1,9 @@
+package com.khattab.islandcampsitereservation.service;
+
+//How modifications and cancellations guard the reservation row, set with campsite.reservation.concurrency-mode
+public enum ConcurrencyMode {
+    //SELECT ... FOR UPDATE before touching the reservation; concurrent edits of the same booking queue on the row lock
+    PESSIMISTIC,
+    //Plain read, version-checked UPDATE/DELETE; the loser of a race fails with OptimisticLockingFailureException and is retried
+    OPTIMISTIC
+}
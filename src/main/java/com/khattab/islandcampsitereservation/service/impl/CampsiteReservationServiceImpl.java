@@ -1,95 +1,472 @@
 package com.khattab.islandcampsitereservation.service.impl;
 
+import com.khattab.islandcampsitereservation.dto.AvailabilityBitmapDTO;
+import com.khattab.islandcampsitereservation.dto.AvailabilityCapacityDTO;
+import com.khattab.islandcampsitereservation.dto.AvailabilityIntervalDTO;
 import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationPageDTO;
 import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
 import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.mapper.ReservationMapper;
+import com.khattab.islandcampsitereservation.occupancy.DateStripedLocks;
+import com.khattab.islandcampsitereservation.occupancy.DayOccupancyIndex;
+import com.khattab.islandcampsitereservation.occupancy.LockReservationDates;
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.repository.NightCapacityRepository;
 import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import com.khattab.islandcampsitereservation.retry.RetryOnConcurrencyFailure;
 import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import com.khattab.islandcampsitereservation.service.ConcurrencyMode;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import com.khattab.islandcampsitereservation.validation.CustomDatesValidator;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
 public class CampsiteReservationServiceImpl implements CampsiteReservationService {
 
+    public static final int MAX_PAGE_SIZE = 200;
+    //Stand-ins for an open-ended date filter, so every listing runs the same index range scan
+    private static final LocalDate FIRST_LISTED_DATE = LocalDate.of(1970, 1, 1);
+    private static final LocalDate LAST_LISTED_DATE = LocalDate.of(9999, 12, 31);
+
     private final ReservationRepository reservationRepository;
-    private final ModelMapper modelMapper;
+    private final NightCapacityRepository nightCapacityRepository;
+    private final ReservationMapper reservationMapper;
+    private final DayOccupancyIndex dayOccupancyIndex;
+    private final DateStripedLocks dateStripedLocks;
+    private final CampsiteSites campsiteSites;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ConcurrencyMode concurrencyMode;
+    private final Timer rowLockWait;
 
     @Autowired
     public CampsiteReservationServiceImpl(ReservationRepository reservationRepository,
-                                          ModelMapper modelMapper) {
+                                          NightCapacityRepository nightCapacityRepository,
+                                          ReservationMapper reservationMapper,
+                                          DayOccupancyIndex dayOccupancyIndex,
+                                          DateStripedLocks dateStripedLocks,
+                                          CampsiteSites campsiteSites,
+                                          ApplicationEventPublisher eventPublisher,
+                                          @Value("${campsite.reservation.concurrency-mode:pessimistic}") ConcurrencyMode concurrencyMode,
+                                          MeterRegistry meterRegistry) {
         this.reservationRepository = reservationRepository;
-        this.modelMapper = modelMapper;
+        this.nightCapacityRepository = nightCapacityRepository;
+        this.reservationMapper = reservationMapper;
+        this.dayOccupancyIndex = dayOccupancyIndex;
+        this.dateStripedLocks = dateStripedLocks;
+        this.campsiteSites = campsiteSites;
+        this.eventPublisher = eventPublisher;
+        this.concurrencyMode = concurrencyMode;
+        this.rowLockWait = lockWaitTimer(meterRegistry, "reservation-row");
+    }
+
+    @Override
+    @Timed(value = "campsite.reservation.read", histogram = true)
+    public List<LocalDate> getAvailability(Long siteId, LocalDate startDate, LocalDate endDate) {
+        if (siteId == null)
+            return getAvailableIntervalsOfAnySite(startDate, endDate)
+                    .stream()
+                    .flatMap(freeInterval -> freeInterval.getFrom().datesUntil(freeInterval.getTo().plusDays(1)))
+                    .toList();
+        return getAvailabilityOfSite(campsiteSites.require(siteId), startDate, endDate);
+    }
+
+    @Override
+    @Timed(value = "campsite.reservation.read", histogram = true)
+    public List<AvailabilityIntervalDTO> getAvailableIntervals(Long siteId, LocalDate startDate, LocalDate endDate) {
+        if (siteId == null)
+            return getAvailableIntervalsOfAnySite(startDate, endDate);
+        return getAvailableIntervalsOfSite(campsiteSites.require(siteId), startDate, endDate);
+    }
+
+    @Override
+    @Timed(value = "campsite.reservation.read", histogram = true)
+    public AvailabilityBitmapDTO getAvailabilityBitmap(Long siteId, LocalDate startDate, LocalDate endDate) {
+        int days = (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        BitSet freeDays = new BitSet(days);
+        for (AvailabilityIntervalDTO freeInterval : getAvailableIntervals(siteId, startDate, endDate)) {
+            freeDays.set((int) ChronoUnit.DAYS.between(startDate, freeInterval.getFrom()),
+                         (int) ChronoUnit.DAYS.between(startDate, freeInterval.getTo()) + 1);
+        }
+        //toByteArray() drops trailing zero bytes; padding keeps the length fixed for a given number of days
+        byte[] bitmap = Arrays.copyOf(freeDays.toByteArray(), (days + 7) / 8);
+        return new AvailabilityBitmapDTO(startDate, days, Base64.getEncoder().encodeToString(bitmap));
+    }
+
+    @Override
+    @Timed(value = "campsite.reservation.read", histogram = true)
+    public List<AvailabilityCapacityDTO> getRemainingCapacity(Long siteId, LocalDate startDate, LocalDate endDate) {
+        List<Long> siteIds = siteId == null ? campsiteSites.getSiteIds() : List.of(campsiteSites.require(siteId));
+        int[] remainingSpots = new int[(int) ChronoUnit.DAYS.between(startDate, endDate) + 1];
+        for (long everySiteId : siteIds) {
+            int[] siteRemainingSpots = getRemainingSpotsOfSite(everySiteId, startDate, endDate);
+            for (int day = 0; day < remainingSpots.length; day++)
+                remainingSpots[day] += siteRemainingSpots[day];
+        }
+        List<AvailabilityCapacityDTO> capacity = new ArrayList<>(remainingSpots.length);
+        for (int day = 0; day < remainingSpots.length; day++)
+            capacity.add(new AvailabilityCapacityDTO(startDate.plusDays(day), remainingSpots[day]));
+        return capacity;
     }
 
     @Override
-    @Transactional
-    public List<LocalDate> getAvailability(LocalDate startDate, LocalDate endDate) {
-        List<Reservation> existingReservations =
-                reservationRepository.findOverlappingReservationsForUpdate(startDate, endDate);
-        List<LocalDate> allDatesInRange = startDate.datesUntil(endDate.plusDays(1)).toList();
+    @Timed(value = "campsite.reservation.read", histogram = true)
+    public ReservationDTO getReservation(String reservationId) {
+        return reservationRepository.findReservationById(Long.parseLong(reservationId))
+                                    .orElseThrow(() -> new EntityNotFoundException(
+                                            String.format("No such reservation exists with Id: %s", reservationId)));
+    }
+
+    @Override
+    @Timed(value = "campsite.reservation.read", histogram = true)
+    public ReservationPageDTO listReservations(LocalDate startDate, LocalDate endDate, String camperEmail, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new IllegalArgumentException(String.format("limit must be between 1 and %d, was %d", MAX_PAGE_SIZE, limit));
+        LocalDate fromDate = startDate == null ? FIRST_LISTED_DATE : startDate;
+        LocalDate toDate = endDate == null ? LAST_LISTED_DATE : endDate;
+        //No stay is longer than the validator allows, so a reservation overlapping fromDate starts at most that many days before it
+        LocalDate seekStartDate = fromDate.minusDays(CustomDatesValidator.MAX_RESERVATION_LENGTH_DAYS);
+        long seekId = 0;
+        if (cursor != null) {
+            ListingCursor after = ListingCursor.decode(cursor);
+            if (!after.startDate().isBefore(seekStartDate)) {
+                seekStartDate = after.startDate();
+                seekId = after.id();
+            }
+        }
 
-        return allDatesInRange.stream()
-                                .filter(date -> existingReservations.stream()
-                                                                    .noneMatch(
-                                                                            reservation -> !date.isAfter(reservation.getEndDate())
-                                                                                    && !date.isBefore(reservation.getStartDate())
-                                                                    )
-                                ).toList();
+        //One row past the page tells whether there is a next page without counting the rest
+        PageRequest pageWithNextRow = PageRequest.of(0, limit + 1);
+        List<ReservationDTO> reservations = camperEmail == null
+                ? reservationRepository.findReservationPage(seekStartDate, seekId, fromDate, toDate, pageWithNextRow)
+                : reservationRepository.findReservationPageByCamperEmail(camperEmail, seekStartDate, seekId, fromDate, toDate, pageWithNextRow);
+        if (reservations.size() <= limit)
+            return new ReservationPageDTO(reservations, null);
+        ReservationDTO last = reservations.get(limit - 1);
+        return new ReservationPageDTO(reservations.subList(0, limit), new ListingCursor(last.getStartDate(), last.getId()).encode());
+    }
+
+    //Not transactional: the indexed path never touches the database and the fallback query runs in its own read-only transaction
+    private List<LocalDate> getAvailabilityOfSite(long siteId, LocalDate startDate, LocalDate endDate) {
+        if (dayOccupancyIndex.covers(siteId, startDate, endDate))
+            return dayOccupancyIndex.getFreeDates(siteId, startDate, endDate);
+
+        int[] remainingSpots = countRemainingSpots(siteId, startDate, endDate);
+        List<LocalDate> freeDates = new ArrayList<>();
+        for (int day = 0; day < remainingSpots.length; day++) {
+            if (remainingSpots[day] > 0)
+                freeDates.add(startDate.plusDays(day));
+        }
+        return freeDates;
+    }
+
+    private List<AvailabilityIntervalDTO> getAvailableIntervalsOfSite(long siteId, LocalDate startDate, LocalDate endDate) {
+        if (dayOccupancyIndex.covers(siteId, startDate, endDate))
+            return dayOccupancyIndex.getFreeIntervals(siteId, startDate, endDate);
+
+        return toFreeIntervals(countRemainingSpots(siteId, startDate, endDate), startDate);
+    }
+
+    private static List<AvailabilityIntervalDTO> toFreeIntervals(int[] remainingSpots, LocalDate startDate) {
+        List<AvailabilityIntervalDTO> freeIntervals = new ArrayList<>();
+        for (int day = 0; day < remainingSpots.length; day++) {
+            if (remainingSpots[day] <= 0)
+                continue;
+            int firstFreeDay = day;
+            while (day + 1 < remainingSpots.length && remainingSpots[day + 1] > 0)
+                day++;
+            freeIntervals.add(new AvailabilityIntervalDTO(startDate.plusDays(firstFreeDay), startDate.plusDays(day)));
+        }
+        return freeIntervals;
+    }
+
+    private int[] getRemainingSpotsOfSite(long siteId, LocalDate startDate, LocalDate endDate) {
+        if (dayOccupancyIndex.covers(siteId, startDate, endDate))
+            return dayOccupancyIndex.getRemainingSpots(siteId, startDate, endDate);
+        return Arrays.stream(countRemainingSpots(siteId, startDate, endDate)).map(spots -> Math.max(spots, 0)).toArray();
+    }
+
+    //Outside the index the reservations overlapping the range are counted; the night_capacity rows are left to writers
+    private int[] countRemainingSpots(long siteId, LocalDate startDate, LocalDate endDate) {
+        return NightCapacityProvisioner.remainingSpots(reservationRepository.findReservedDateRanges(siteId, startDate, endDate),
+                startDate, endDate, campsiteSites.getSpotsPerNight());
+    }
+
+    //Each site is answered from its own bitmap where it covers the range; the other sites are read together in a single
+    //query, so one request costs one round trip and one connection however many sites there are. Free runs are merged
+    private List<AvailabilityIntervalDTO> getAvailableIntervalsOfAnySite(LocalDate startDate, LocalDate endDate) {
+        List<Long> siteIds = campsiteSites.getSiteIds();
+        List<Long> unindexedSiteIds = siteIds.stream().filter(siteId -> !dayOccupancyIndex.covers(siteId, startDate, endDate)).toList();
+        Map<Long, List<ReservationDateRange>> reservedBySite = unindexedSiteIds.isEmpty()
+                ? Map.of()
+                : reservationRepository.findReservedDateRangesOfSites(unindexedSiteIds, startDate, endDate)
+                                       .stream()
+                                       .collect(Collectors.groupingBy(ReservationDateRange::getSiteId));
+        List<List<AvailabilityIntervalDTO>> siteIntervals = siteIds.stream()
+                .map(siteId -> unindexedSiteIds.contains(siteId)
+                        ? toFreeIntervals(NightCapacityProvisioner.remainingSpots(reservedBySite.getOrDefault(siteId, List.of()),
+                                startDate, endDate, campsiteSites.getSpotsPerNight()), startDate)
+                        : dayOccupancyIndex.getFreeIntervals(siteId, startDate, endDate))
+                .toList();
+
+        List<AvailabilityIntervalDTO> freeIntervals = siteIntervals.stream()
+                                                                   .flatMap(List::stream)
+                                                                   .sorted(Comparator.comparing(AvailabilityIntervalDTO::getFrom))
+                                                                   .toList();
+        List<AvailabilityIntervalDTO> merged = new ArrayList<>();
+        for (AvailabilityIntervalDTO freeInterval : freeIntervals) {
+            AvailabilityIntervalDTO last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && !freeInterval.getFrom().isAfter(last.getTo().plusDays(1))) {
+                if (freeInterval.getTo().isAfter(last.getTo()))
+                    merged.set(merged.size() - 1, new AvailabilityIntervalDTO(last.getFrom(), freeInterval.getTo()));
+            } else {
+                merged.add(freeInterval);
+            }
+        }
+        return merged;
     }
 
     @Override
+    @RetryOnConcurrencyFailure
+    @LockReservationDates
     @Transactional(rollbackOn = {ReservationConflictException.class, CannotAcquireLockException.class, DataAccessException.class})
     public ReservationDTO reserve(ReservationDTO reservationDTO) throws ReservationConflictException {
+        long siteId = campsiteSites.require(reservationDTO.getSiteId());
+        reservationDTO = withSiteId(reservationDTO, siteId);
+        //Overlapping bookings of a site queue on its date stripes; whoever gets them after a winner committed is turned away from memory
+        Runnable unlockDates = lockDates(siteId, reservationDTO.getStartDate(), reservationDTO.getEndDate());
+        boolean unlockOnCompletion = runAfterTransactionCompletion(unlockDates);
         try {
-            List<Reservation> existingReservation =
-                    reservationRepository.findOverlappingReservationsForUpdate(
-                            reservationDTO.getStartDate(),
-                            reservationDTO.getEndDate());
-
-            if (!existingReservation.isEmpty()) {
+            if (dayOccupancyIndex.covers(siteId, reservationDTO.getStartDate(), reservationDTO.getEndDate())
+                    && !dayOccupancyIndex.isFree(siteId, reservationDTO.getStartDate(), reservationDTO.getEndDate())) {
                 throw new ReservationConflictException(String.format(
                         "Reservation conflict upon read with existing bookings. Cannot book from %s to %s",
                         reservationDTO.getStartDate(), reservationDTO.getEndDate()));
             }
 
-            Reservation sucessfulReservation;
-            sucessfulReservation =
-                    reservationRepository.save(modelMapper.map(reservationDTO, Reservation.class));
-            return modelMapper.map(sucessfulReservation, ReservationDTO.class);
+            takeSpots(siteId, reservationDTO.getStartDate(), reservationDTO.getEndDate());
+            Reservation sucessfulReservation =
+                    reservationRepository.save(reservationMapper.toEntity(reservationDTO));
+            eventPublisher.publishEvent(ReservationChangedEvent.reserved(sucessfulReservation.getId(),
+                    sucessfulReservation.getSiteId(), sucessfulReservation.getStartDate(), sucessfulReservation.getEndDate()));
+            return reservationMapper.toDTO(sucessfulReservation);
+        } finally {
+            if (!unlockOnCompletion)
+                unlockDates.run();
+        }
+    }
 
-        } catch (CannotAcquireLockException ex) {
-            throw new ReservationConflictException(String.format("Reservation conflict with existing bookings. Cannot book from %s to %s",
-                    reservationDTO.getStartDate(), reservationDTO.getEndDate()));
+    @Override
+    @RetryOnConcurrencyFailure
+    @Transactional(rollbackOn = {ReservationConflictException.class, CannotAcquireLockException.class, DataAccessException.class})
+    public List<ReservationDTO> reserveAll(List<ReservationDTO> requestedDTOs) throws ReservationConflictException {
+        List<ReservationDTO> reservationDTOs = requestedDTOs.stream()
+                .map(reservationDTO -> withSiteId(reservationDTO, campsiteSites.require(reservationDTO.getSiteId())))
+                .toList();
+        //Taken in site and date order, so two batches lock the night rows they share in the same order
+        List<ReservationDTO> byNight = reservationDTOs.stream()
+                                                      .sorted(Comparator.comparing(ReservationDTO::getSiteId)
+                                                                        .thenComparing(ReservationDTO::getStartDate))
+                                                      .toList();
+        for (ReservationDTO reservationDTO : byNight) {
+            if (!trySpots(reservationDTO.getSiteId(), reservationDTO.getStartDate(), reservationDTO.getEndDate()))
+                throw new ReservationConflictException(String.format(
+                        "Reservation conflict with existing bookings. Cannot book the batch of %d reservations", reservationDTOs.size()));
         }
+        List<Reservation> sucessfulReservations =
+                reservationRepository.saveAll(reservationDTOs.stream().map(reservationMapper::toEntity).toList());
+        sucessfulReservations.forEach(reservation -> eventPublisher.publishEvent(ReservationChangedEvent.reserved(
+                reservation.getId(), reservation.getSiteId(), reservation.getStartDate(), reservation.getEndDate())));
+        return sucessfulReservations.stream().map(reservationMapper::toDTO).toList();
     }
 
     @Override
+    @RetryOnConcurrencyFailure
+    @LockReservationDates(ofReservationId = true)
     @Transactional(rollbackOn = {ReservationConflictException.class, CannotAcquireLockException.class, DataAccessException.class})
     public void cancelReservation(String reservationId) {
-        if(reservationRepository.findByIdWithLock(Long.parseLong(reservationId)).isEmpty())
+        Optional<Reservation> existingReservation = findForUpdate(Long.parseLong(reservationId));
+        if(existingReservation.isEmpty())
             throw new EntityNotFoundException(String.format("No such reservation exists with Id: %s", reservationId));
-        reservationRepository.deleteById(Long.parseLong(reservationId));
+        Runnable unlockDates = lockDates(existingReservation.get().getSiteId(),
+                existingReservation.get().getStartDate(), existingReservation.get().getEndDate());
+        boolean unlockOnCompletion = runAfterTransactionCompletion(unlockDates);
+        try {
+            nightCapacityRepository.releaseSpot(existingReservation.get().getSiteId(),
+                    existingReservation.get().getStartDate(), existingReservation.get().getEndDate());
+            reservationRepository.delete(existingReservation.get());
+            //The version-checked DELETE runs here, so a lost race surfaces before the cancellation is published
+            reservationRepository.flush();
+            eventPublisher.publishEvent(ReservationChangedEvent.cancelled(existingReservation.get().getId(),
+                    existingReservation.get().getSiteId(),
+                    existingReservation.get().getStartDate(), existingReservation.get().getEndDate()));
+        } finally {
+            if (!unlockOnCompletion)
+                unlockDates.run();
+        }
     }
 
     @Override
+    @RetryOnConcurrencyFailure
+    @LockReservationDates(ofReservationId = true)
     @Transactional(rollbackOn = {ReservationConflictException.class, CannotAcquireLockException.class, DataAccessException.class})
     public ReservationDTO modifyReservation(String reservationId,
-                                            ReservationDTO modifiedReservationDatesDTO) {
-        Optional<Reservation> existingReservation = reservationRepository.findByIdWithLock(Long.parseLong(reservationId));
+                                            ReservationDTO modifiedReservationDatesDTO) throws ReservationConflictException {
+        Optional<Reservation> existingReservation = findForUpdate(Long.parseLong(reservationId));
         if(existingReservation.isEmpty())
             throw new EntityNotFoundException(String.format("No such reservation exists with Id: %s", reservationId));
+        if (modifiedReservationDatesDTO.getSiteId() != null
+                && !modifiedReservationDatesDTO.getSiteId().equals(existingReservation.get().getSiteId()))
+            throw new IllegalArgumentException(String.format(
+                    "Reservation %s is for site %s and cannot be moved to another site; cancel it and book the other site instead",
+                    reservationId, existingReservation.get().getSiteId()));
+
+        LocalDate previousStartDate = existingReservation.get().getStartDate();
+        LocalDate previousEndDate = existingReservation.get().getEndDate();
+        //Unchanged dates would issue no UPDATE, and so no version check, so there is nothing to rewrite or publish
+        if (previousStartDate.equals(modifiedReservationDatesDTO.getStartDate())
+                && previousEndDate.equals(modifiedReservationDatesDTO.getEndDate()))
+            return reservationMapper.toDTO(existingReservation.get());
+        //Covers the old and the new dates, so two edits of one booking reach the occupancy index in commit order
+        Runnable unlockDates = lockDates(existingReservation.get().getSiteId(),
+                min(previousStartDate, modifiedReservationDatesDTO.getStartDate()),
+                max(previousEndDate, modifiedReservationDatesDTO.getEndDate()));
+        boolean unlockOnCompletion = runAfterTransactionCompletion(unlockDates);
+        try {
+            //Released first, so nights that the old and the new dates share keep their spot
+            nightCapacityRepository.releaseSpot(existingReservation.get().getSiteId(), previousStartDate, previousEndDate);
+            takeSpots(existingReservation.get().getSiteId(),
+                    modifiedReservationDatesDTO.getStartDate(), modifiedReservationDatesDTO.getEndDate());
+            existingReservation.get().setStartDate(modifiedReservationDatesDTO.getStartDate());
+            existingReservation.get().setEndDate(modifiedReservationDatesDTO.getEndDate());
+            Reservation modifiedReservation = reservationRepository.saveAndFlush(existingReservation.get());
+            eventPublisher.publishEvent(new ReservationChangedEvent(modifiedReservation.getId(),
+                    modifiedReservation.getSiteId(), previousStartDate, previousEndDate,
+                    modifiedReservation.getStartDate(), modifiedReservation.getEndDate()));
+            return reservationMapper.toDTO(modifiedReservation);
+        } finally {
+            if (!unlockOnCompletion)
+                unlockDates.run();
+        }
+    }
+
+    //Position of the last reservation of a page, handed to clients as an opaque token
+    private record ListingCursor(LocalDate startDate, long id) {
+
+        private String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                         .encodeToString((startDate + "/" + id).getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static ListingCursor decode(String cursor) {
+            try {
+                String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("/");
+                return new ListingCursor(LocalDate.parse(position[0]), Long.parseLong(position[1]));
+            } catch (IllegalArgumentException | DateTimeParseException | ArrayIndexOutOfBoundsException ex) {
+                throw new IllegalArgumentException(String.format("Invalid cursor: %s", cursor));
+            }
+        }
+    }
+
+    private static LocalDate min(LocalDate first, LocalDate second) {
+        return first.isBefore(second) ? first : second;
+    }
+
+    private static LocalDate max(LocalDate first, LocalDate second) {
+        return first.isAfter(second) ? first : second;
+    }
+
+    //Optimistic mode takes no row lock here: the @Version check on the UPDATE/DELETE catches a concurrent edit instead
+    private Optional<Reservation> findForUpdate(Long reservationId) {
+        if (concurrencyMode == ConcurrencyMode.OPTIMISTIC)
+            return reservationRepository.findById(reservationId);
+        long startedAt = System.nanoTime();
+        try {
+            return reservationRepository.findByIdWithLock(reservationId);
+        } finally {
+            rowLockWait.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    //The caller's DTO is left as it was sent, so a retried or replayed request still carries what the client asked for
+    private static ReservationDTO withSiteId(ReservationDTO reservationDTO, long siteId) {
+        return new ReservationDTO(reservationDTO.getId(), siteId, reservationDTO.getCamperFullName(),
+                reservationDTO.getCamperEmail(), reservationDTO.getStartDate(), reservationDTO.getEndDate());
+    }
+
+    //ReservationDateLockAspect already waited for these stripes before the transaction began, so they are only counted
+    //again here. Nothing waits while a connection is held: dates that changed after the aspect read them fail the attempt,
+    //and the retry locks them before its transaction
+    private Runnable lockDates(long siteId, LocalDate startDate, LocalDate endDate) {
+        Runnable unlockDates = dateStripedLocks.tryLock(siteId, startDate, endDate, 0);
+        if (unlockDates == null)
+            throw new CannotAcquireLockException(String.format(
+                    "Dates of site %d from %s to %s are locked by another booking", siteId, startDate, endDate));
+        return unlockDates;
+    }
+
+    //A primary-key SELECT ... FOR UPDATE is only slow while it waits, so its duration stands in for the row lock wait
+    private static Timer lockWaitTimer(MeterRegistry meterRegistry, String lock) {
+        return Timer.builder("campsite.reservation.lock.wait")
+                    .description("Time spent waiting for the locks that guard a reservation write")
+                    .tag("lock", lock)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+    }
+
+    //Deferred to the end of the transaction so the locks cover the commit and the index update that follows it
+    private static boolean runAfterTransactionCompletion(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return false;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+        return true;
+    }
+
+    //The throw rolls back the spots already taken on the other nights of the stay.
+    //Only a full night proves a conflict; a lock wait timeout or deadlock propagates and the write is retried
+    private void takeSpots(long siteId, LocalDate startDate, LocalDate endDate) throws ReservationConflictException {
+        if (!trySpots(siteId, startDate, endDate))
+            throw new ReservationConflictException(String.format("Reservation conflict with existing bookings. Cannot book from %s to %s",
+                    startDate, endDate));
+    }
 
-        existingReservation.get().setStartDate(modifiedReservationDatesDTO.getStartDate());
-        existingReservation.get().setEndDate(modifiedReservationDatesDTO.getEndDate());
-        return modelMapper.map(reservationRepository.saveAndFlush(existingReservation.get()), ReservationDTO.class);
+    //One conditional UPDATE over the stay's nights; each night either gives up a spot or is left alone
+    private boolean trySpots(long siteId, LocalDate startDate, LocalDate endDate) {
+        long nights = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        return nightCapacityRepository.takeSpot(siteId, startDate, endDate) == nights;
     }
 
 }
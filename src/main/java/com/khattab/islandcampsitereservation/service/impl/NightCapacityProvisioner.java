@@ -0,0 +1,83 @@
+package com.khattab.islandcampsitereservation.service.impl;
+
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.repository.NightCapacityRepository;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+
+//A night can only be booked once its night_capacity row exists, so rows are kept campsite.capacity.provision-days
+//ahead of today. New rows start from the reservations already on those nights, which also carries over bookings made
+//before the counters existed.
+@Component
+public class NightCapacityProvisioner {
+
+    private final NightCapacityRepository nightCapacityRepository;
+    private final ReservationRepository reservationRepository;
+    private final CampsiteSites campsiteSites;
+    private final int provisionDays;
+
+    @Autowired
+    public NightCapacityProvisioner(NightCapacityRepository nightCapacityRepository,
+                                    ReservationRepository reservationRepository,
+                                    CampsiteSites campsiteSites,
+                                    @Value("${campsite.capacity.provision-days:60}") int provisionDays) {
+        this.nightCapacityRepository = nightCapacityRepository;
+        this.reservationRepository = reservationRepository;
+        this.campsiteSites = campsiteSites;
+        this.provisionDays = provisionDays;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 0 0 * * *")
+    public void provision() {
+        nightCapacityRepository.resize(campsiteSites.getSpotsPerNight());
+        LocalDate today = LocalDate.now();
+        nightCapacityRepository.deleteNightsBefore(today);
+        LocalDate lastNight = today.plusDays(provisionDays - 1L);
+        for (long siteId : campsiteSites.getSiteIds()) {
+            LocalDate lastProvisionedNight = nightCapacityRepository.findLastNight(siteId);
+            LocalDate firstNight = lastProvisionedNight == null || lastProvisionedNight.isBefore(today)
+                    ? today : lastProvisionedNight.plusDays(1);
+            if (!firstNight.isAfter(lastNight))
+                provisionNights(siteId, firstNight, lastNight);
+        }
+    }
+
+    private void provisionNights(long siteId, LocalDate firstNight, LocalDate lastNight) {
+        int capacity = campsiteSites.getSpotsPerNight();
+        int[] remaining = remainingSpots(reservationRepository.findReservedDateRanges(siteId, firstNight, lastNight),
+                firstNight, lastNight, capacity);
+        for (int night = 0; night < remaining.length; night++) {
+            try {
+                nightCapacityRepository.provision(siteId, firstNight.plusDays(night), capacity, remaining[night]);
+            } catch (DataIntegrityViolationException ex) {
+                //Another instance provisioned this night first
+            }
+        }
+    }
+
+    //Spots left on each night from firstNight to lastNight once the given reservations are counted
+    static int[] remainingSpots(List<ReservationDateRange> reservations, LocalDate firstNight, LocalDate lastNight, int capacity) {
+        int[] remaining = new int[(int) ChronoUnit.DAYS.between(firstNight, lastNight) + 1];
+        Arrays.fill(remaining, capacity);
+        for (ReservationDateRange reservation : reservations) {
+            int from = (int) Math.max(ChronoUnit.DAYS.between(firstNight, reservation.getStartDate()), 0);
+            int to = (int) Math.min(ChronoUnit.DAYS.between(firstNight, reservation.getEndDate()), remaining.length - 1L);
+            for (int night = from; night <= to; night++)
+                remaining[night]--;
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,43 @@
+package com.khattab.islandcampsitereservation.site;
+
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+//The bookable sites, numbered 1 to campsite.site-count, each taking up to campsite.spots-per-night groups a night;
+//requests that name no site are for site 1, the original campsite
+@Component
+public class CampsiteSites {
+
+    public static final long DEFAULT_SITE_ID = 1;
+
+    private final List<Long> siteIds;
+    private final int spotsPerNight;
+
+    @Autowired
+    public CampsiteSites(@Value("${campsite.site-count:1}") int siteCount,
+                         @Value("${campsite.spots-per-night:1}") int spotsPerNight) {
+        this.siteIds = LongStream.rangeClosed(DEFAULT_SITE_ID, siteCount).boxed().toList();
+        this.spotsPerNight = spotsPerNight;
+    }
+
+    public List<Long> getSiteIds() {
+        return siteIds;
+    }
+
+    public int getSpotsPerNight() {
+        return spotsPerNight;
+    }
+
+    //Null stands for the default site; an unknown site is reported like an unknown reservation
+    public long require(Long siteId) {
+        long requiredSiteId = siteId == null ? DEFAULT_SITE_ID : siteId;
+        if (requiredSiteId < DEFAULT_SITE_ID || requiredSiteId > siteIds.size())
+            throw new EntityNotFoundException(String.format("No such site exists with Id: %s", siteId));
+        return requiredSiteId;
+    }
+}
@@ -0,0 +1,230 @@
+package com.khattab.islandcampsitereservation.stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.khattab.islandcampsitereservation.dto.AvailabilityChangeDTO;
+import com.khattab.islandcampsitereservation.dto.AvailabilityIntervalDTO;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import com.khattab.islandcampsitereservation.occupancy.DayOccupancyIndex;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes "dates freed / dates taken" deltas to server-sent event subscribers after every committed reservation change.
+ * A night is reported taken once its last spot is booked and freed once a spot opens on a full night, as the occupancy
+ * index counts them when the change is published; a change that leaves every night it touched as full or as free as
+ * before sends nothing. An idle subscriber is an async request with no thread behind it. Each delta is serialized once and queued per
+ * subscriber, and one that falls too far behind is disconnected and left to reconnect and re-read availability.
+ *
+ * Queues are drained on a small pool of platform threads, never on virtual ones: SseEmitter writes under a monitor,
+ * so a write blocked on a client that stopped reading would pin its carrier, and enough of them would stall every
+ * virtual thread, request handling included. Here a stalled client holds one delivery thread until Tomcat's write
+ * times out, and delays other subscribers' events at worst, never requests.
+ */
+@Component
+public class AvailabilityChangeBroadcaster {
+
+    static final String CHANGE_EVENT_NAME = "availability-change";
+
+    private final ObjectMapper objectMapper;
+    private final DayOccupancyIndex dayOccupancyIndex;
+    private final long subscriptionTimeoutMillis;
+    private final int maxPendingEvents;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService deliveryExecutor;
+    private final AtomicLong lastEventId = new AtomicLong();
+    //Held from reading the index to queueing the delta, so deltas for the same nights go out in the order they were read
+    private final ReentrantLock publishLock = new ReentrantLock();
+
+    @Autowired
+    public AvailabilityChangeBroadcaster(ObjectMapper objectMapper,
+                                         DayOccupancyIndex dayOccupancyIndex,
+                                         @Value("${campsite.availability.stream.timeout-ms:1800000}") long subscriptionTimeoutMillis,
+                                         @Value("${campsite.availability.stream.max-pending-events:64}") int maxPendingEvents,
+                                         @Value("${campsite.availability.stream.delivery-threads:8}") int deliveryThreads) {
+        this.objectMapper = objectMapper;
+        this.dayOccupancyIndex = dayOccupancyIndex;
+        this.subscriptionTimeoutMillis = subscriptionTimeoutMillis;
+        this.maxPendingEvents = maxPendingEvents;
+        this.deliveryExecutor = Executors.newFixedThreadPool(deliveryThreads,
+                Thread.ofPlatform().name("availability-stream-", 0).daemon().factory());
+    }
+
+    public SseEmitter subscribe() {
+        Subscriber subscriber = new Subscriber(new SseEmitter(subscriptionTimeoutMillis));
+        subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onError(ex -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return subscriber.emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    //Runs after the index, the response cache and the state version, so a subscriber reacting to a delta reads the new state
+    @Order(Ordered.HIGHEST_PRECEDENCE + 3)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationChanged(ReservationChangedEvent event) {
+        publishLock.lock();
+        try {
+            AvailabilityChangeDTO change = changeOf(event);
+            if (change.getFreed().isEmpty() && change.getTaken().isEmpty())
+                return;
+            String id = String.valueOf(lastEventId.incrementAndGet());
+            String data = serialize(change);
+            broadcast(() -> SseEmitter.event().id(id).name(CHANGE_EVENT_NAME).data(data));
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    //Keeps proxies from closing idle streams and finds subscribers that went away without closing theirs
+    @Scheduled(fixedRateString = "${campsite.availability.stream.heartbeat-ms:15000}")
+    public void sendHeartbeat() {
+        broadcast(() -> SseEmitter.event().comment("heartbeat"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+        deliveryExecutor.shutdownNow();
+    }
+
+    //Event builders are single use, so every subscriber gets its own built from the shared, already serialized data
+    private void broadcast(EventFactory eventFactory) {
+        subscribers.forEach(subscriber -> subscriber.offer(eventFactory));
+    }
+
+    //What the change frees and takes; a modification that keeps some of its nights reports only the difference. A night
+    //it released is freed if it now has exactly one spot left, i.e. was full before, and one it booked is taken if now full
+    AvailabilityChangeDTO changeOf(ReservationChangedEvent event) {
+        List<AvailabilityIntervalDTO> freed = event.releasesDates()
+                ? nightsWithRemainingSpots(event.getSiteId(), 1, subtract(
+                        event.getPreviousStartDate(), event.getPreviousEndDate(), event.getStartDate(), event.getEndDate()))
+                : List.of();
+        List<AvailabilityIntervalDTO> taken = event.takesDates()
+                ? nightsWithRemainingSpots(event.getSiteId(), 0, subtract(
+                        event.getStartDate(), event.getEndDate(), event.getPreviousStartDate(), event.getPreviousEndDate()))
+                : List.of();
+        return new AvailabilityChangeDTO(event.getSiteId(), freed, taken);
+    }
+
+    //The runs of nights within the intervals that have exactly remainingSpots left. Nights the index does not cover are
+    //past or beyond the booking horizon, so they are left out
+    private List<AvailabilityIntervalDTO> nightsWithRemainingSpots(long siteId, int remainingSpots, List<AvailabilityIntervalDTO> intervals) {
+        List<AvailabilityIntervalDTO> nights = new ArrayList<>();
+        for (AvailabilityIntervalDTO interval : intervals) {
+            LocalDate runStart = null;
+            for (LocalDate night = interval.getFrom(); !night.isAfter(interval.getTo()); night = night.plusDays(1)) {
+                boolean matches = dayOccupancyIndex.covers(siteId, night, night)
+                        && dayOccupancyIndex.getRemainingSpots(siteId, night, night)[0] == remainingSpots;
+                if (matches && runStart == null) {
+                    runStart = night;
+                } else if (!matches && runStart != null) {
+                    nights.add(new AvailabilityIntervalDTO(runStart, night.minusDays(1)));
+                    runStart = null;
+                }
+            }
+            if (runStart != null)
+                nights.add(new AvailabilityIntervalDTO(runStart, interval.getTo()));
+        }
+        return nights;
+    }
+
+    //[from, to] minus [removedFrom, removedTo], all inclusive; the removed range may be absent
+    private static List<AvailabilityIntervalDTO> subtract(LocalDate from, LocalDate to, LocalDate removedFrom, LocalDate removedTo) {
+        if (removedFrom == null || removedFrom.isAfter(to) || removedTo.isBefore(from))
+            return List.of(new AvailabilityIntervalDTO(from, to));
+        List<AvailabilityIntervalDTO> remainder = new ArrayList<>(2);
+        if (from.isBefore(removedFrom))
+            remainder.add(new AvailabilityIntervalDTO(from, removedFrom.minusDays(1)));
+        if (to.isAfter(removedTo))
+            remainder.add(new AvailabilityIntervalDTO(removedTo.plusDays(1), to));
+        return remainder;
+    }
+
+    private String serialize(AvailabilityChangeDTO change) {
+        try {
+            return objectMapper.writeValueAsString(change);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface EventFactory {
+        SseEmitter.SseEventBuilder newEvent();
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Queue<EventFactory> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(EventFactory eventFactory) {
+            if (pendingCount.incrementAndGet() > maxPendingEvents) {
+                disconnect();
+                return;
+            }
+            pending.add(eventFactory);
+            if (draining.compareAndSet(false, true))
+                deliveryExecutor.execute(this::drain);
+        }
+
+        //At most one drain per subscriber at a time, so its events are written in order
+        private void drain() {
+            do {
+                EventFactory eventFactory;
+                while ((eventFactory = pending.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    try {
+                        emitter.send(eventFactory.newEvent());
+                    } catch (IOException | IllegalStateException ex) {
+                        disconnect();
+                        return;
+                    }
+                }
+                draining.set(false);
+            } while (!pending.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        //Completing waits for a send in progress, so it must never run on the thread that committed the change
+        private void disconnect() {
+            subscribers.remove(this);
+            pending.clear();
+            deliveryExecutor.execute(emitter::complete);
+        }
+    }
+}
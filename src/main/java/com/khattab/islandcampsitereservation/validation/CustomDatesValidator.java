@@ -10,6 +10,8 @@ import java.time.temporal.ChronoUnit;
 
 public class CustomDatesValidator implements ConstraintValidator<StartDateAndEndDateValidation, Object> {
 
+    public static final int MAX_RESERVATION_LENGTH_DAYS = 3;
+
     @Override
     public boolean isValid(Object value, ConstraintValidatorContext context) {
         if (value == null || !(value instanceof ReservationDTO))
@@ -21,6 +23,6 @@ public class CustomDatesValidator implements ConstraintValidator<StartDateAndEnd
         return reservationDTO.getStartDate().isAfter(LocalDate.now()) &&
                 reservationDTO.getStartDate().isBefore(LocalDate.now().plusMonths(1)) &&
                 daysBetweenStartAndEnd >= 0 &&
-                daysBetweenStartAndEnd <=3;
+                daysBetweenStartAndEnd <= MAX_RESERVATION_LENGTH_DAYS;
     }
 }
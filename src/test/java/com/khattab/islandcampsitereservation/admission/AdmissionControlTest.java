@@ -0,0 +1,119 @@
+package com.khattab.islandcampsitereservation.admission;
+
+import com.khattab.islandcampsitereservation.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdmissionControlTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private SimpleMeterRegistry meterRegistry;
+    private AdmissionControl admissionControl;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        admissionControl = new AdmissionControl(meterRegistry, 1, 2, 2, 4, 250, 1, 3, 1, 1);
+    }
+
+    @Test
+    public void testAdmitRead_WhenBurstIsSpent_ShouldRejectWithRetryAfter() {
+        admissionControl.admitRead();
+        admissionControl.admitRead();
+
+        TooManyRequestsException ex = assertThrows(TooManyRequestsException.class, () -> admissionControl.admitRead());
+        assertEquals(1, ex.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("campsite.admission.rejected").tag("budget", "read").counter().count());
+    }
+
+    @Test
+    public void testAdmitClient_ShouldKeepABudgetPerClientAddress() {
+        for (int i = 0; i < 3; i++)
+            admissionControl.admitClient("10.0.0.1");
+
+        assertThrows(TooManyRequestsException.class, () -> admissionControl.admitClient("10.0.0.1"));
+        assertDoesNotThrow(() -> admissionControl.admitClient("10.0.0.2"));
+    }
+
+    @Test
+    public void testAdmitCamper_ShouldIgnoreEmailCaseAndWaitForTheMinutelyRefill() {
+        admissionControl.admitCamper("John.Doe@example.com");
+
+        TooManyRequestsException ex = assertThrows(TooManyRequestsException.class,
+                () -> admissionControl.admitCamper("john.doe@example.com"));
+        assertTrue(ex.getRetryAfterSeconds() > 50);
+    }
+
+    @Test
+    public void testAdmitWrite_WhenLimitIsReached_ShouldRejectUntilAWriteFinishes() {
+        for (int i = 0; i < 4; i++)
+            admissionControl.admitWrite();
+
+        assertThrows(TooManyRequestsException.class, () -> admissionControl.admitWrite());
+        admissionControl.releaseWrite(FAST);
+        assertDoesNotThrow(() -> admissionControl.admitWrite());
+    }
+
+    @Test
+    public void testReleaseWrite_WhenWritesRunSlow_ShouldShrinkTheLimitDownToTheMinimum() {
+        AdaptiveConcurrencyLimit writeLimit = admissionControl.getWriteLimit();
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            admissionControl.admitWrite();
+            now += SLOW;
+            writeLimit.release(SLOW, now);
+        }
+
+        assertEquals(2, writeLimit.getLimit());
+        assertEquals(2.0, meterRegistry.get("campsite.admission.write.limit").gauge().value());
+    }
+
+    @Test
+    public void testReleaseWrite_WhenOverlappingWritesRunSlow_ShouldCutTheLimitOncePerWindow() {
+        AdaptiveConcurrencyLimit writeLimit = admissionControl.getWriteLimit();
+        for (int i = 0; i < 4; i++)
+            admissionControl.admitWrite();
+
+        //All four started before the first one finished, so they saw the same slowdown
+        for (int i = 0; i < 4; i++)
+            writeLimit.release(SLOW, SLOW + i);
+        assertEquals(3, writeLimit.getLimit());
+
+        //Writes started after the cut belong to the next window and cut again
+        for (int i = 2; i <= 3; i++) {
+            admissionControl.admitWrite();
+            writeLimit.release(SLOW, i * SLOW + 10);
+        }
+        assertEquals(2, writeLimit.getLimit());
+        assertEquals(0, writeLimit.getInFlight());
+    }
+
+    @Test
+    public void testReleaseWrite_WhenSaturatedWritesRunFast_ShouldGrowTheLimitBackToTheMaximum() {
+        AdaptiveConcurrencyLimit writeLimit = admissionControl.getWriteLimit();
+        admissionControl.admitWrite();
+        admissionControl.releaseWrite(SLOW);
+        assertEquals(3, writeLimit.getLimit());
+
+        for (int round = 0; round < 10 && writeLimit.getLimit() < 4; round++) {
+            int limit = writeLimit.getLimit();
+            for (int i = 0; i < limit; i++)
+                admissionControl.admitWrite();
+            for (int i = 0; i < limit; i++)
+                admissionControl.releaseWrite(FAST);
+        }
+
+        assertEquals(4, writeLimit.getLimit());
+        assertEquals(0, writeLimit.getInFlight());
+    }
+}
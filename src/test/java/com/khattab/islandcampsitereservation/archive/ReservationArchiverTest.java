@@ -0,0 +1,94 @@
+package com.khattab.islandcampsitereservation.archive;
+
+import com.khattab.islandcampsitereservation.config.IdBlockConfiguration;
+import com.khattab.islandcampsitereservation.entity.ArchivedReservation;
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.entity.ReservationOutboxEvent;
+import com.khattab.islandcampsitereservation.outbox.ReservationOutboxSink;
+import com.khattab.islandcampsitereservation.outbox.ReservationOutboxWriter;
+import com.khattab.islandcampsitereservation.repository.ReservationArchiveRepository;
+import com.khattab.islandcampsitereservation.repository.ReservationOutboxRepository;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.config.location=classpath:/embedded-h2.properties",
+        "campsite.archive.enabled=true",
+        "campsite.archive.batch-size=2"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({IdBlockConfiguration.class, ReservationOutboxWriter.class, ReservationArchiver.class, ReservationArchiverTest.SinkConfiguration.class})
+public class ReservationArchiverTest {
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+    @Autowired
+    private ReservationArchiveRepository reservationArchiveRepository;
+    @Autowired
+    private ReservationOutboxRepository reservationOutboxRepository;
+    @Autowired
+    private ReservationArchiver reservationArchiver;
+
+    @Test
+    public void testArchiveEndedStays_ShouldMoveOneBatchOfEndedStaysAndKeepCurrentOnes() {
+        LocalDate today = LocalDate.now();
+        Reservation oldest = reservation("John Doe", today.minusDays(30), today.minusDays(28));
+        Reservation older = reservation("Jane Smith", today.minusDays(10), today.minusDays(9));
+        Reservation endedYesterday = reservation("Jim Beam", today.minusDays(2), today.minusDays(1));
+        Reservation endingToday = reservation("Jack Daniels", today.minusDays(1), today);
+        Reservation upcoming = reservation("Johnnie Walker", today.plusDays(3), today.plusDays(4));
+        reservationRepository.saveAllAndFlush(List.of(endingToday, older, upcoming, oldest, endedYesterday));
+
+        reservationArchiver.archiveEndedStays();
+
+        //Oldest stays first, batch-size at a time
+        assertEquals(Set.of(oldest.getId(), older.getId()),
+                reservationArchiveRepository.findAll().stream().map(ArchivedReservation::getId).collect(Collectors.toSet()));
+        assertEquals(3, reservationRepository.count());
+
+        reservationArchiver.archiveEndedStays();
+        reservationArchiver.archiveEndedStays();
+
+        assertEquals(Set.of(endingToday.getId(), upcoming.getId()),
+                reservationRepository.findAll().stream().map(Reservation::getId).collect(Collectors.toSet()));
+        ArchivedReservation archived = reservationArchiveRepository.findById(endedYesterday.getId()).orElseThrow();
+        assertEquals("Jim Beam", archived.getCamperFullName());
+        assertEquals(today.minusDays(2), archived.getStartDate());
+        assertEquals(today.minusDays(1), archived.getEndDate());
+
+        List<ReservationOutboxEvent> outboxEvents = reservationOutboxRepository.findAll();
+        assertEquals(Set.of(oldest.getId(), older.getId(), endedYesterday.getId()),
+                outboxEvents.stream().map(ReservationOutboxEvent::getReservationId).collect(Collectors.toSet()));
+        assertTrue(outboxEvents.stream().allMatch(event -> event.getChangeType() == ReservationOutboxEvent.ChangeType.ARCHIVED
+                && event.getStartDate() == null && event.getPreviousStartDate() != null));
+    }
+
+    //The outbox is only written while a sink is registered
+    @TestConfiguration
+    static class SinkConfiguration {
+
+        @Bean
+        ReservationOutboxSink reservationOutboxSink() {
+            return events -> {
+            };
+        }
+    }
+
+    private static Reservation reservation(String camperFullName, LocalDate startDate, LocalDate endDate) {
+        return new Reservation(null, 1L, camperFullName, "camper@example.com", startDate, endDate);
+    }
+}
@@ -0,0 +1,92 @@
+package com.khattab.islandcampsitereservation.benchmark;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityBenchmark {
+
+    @Param({"7", "30", "180"})
+    private int windowDays;
+
+    //Share of days in the window that are booked
+    @Param({"0.1", "0.5", "0.9"})
+    private double density;
+
+    //false sizes the occupancy index to zero days so every query takes the database path
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    private ConfigurableApplicationContext context;
+    private CampsiteReservationService campsiteReservationService;
+    private LocalDate startDate;
+    private LocalDate endDate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("campsite.availability.index-window-days=" + (indexed ? 400 : 0));
+        campsiteReservationService = context.getBean(CampsiteReservationService.class);
+        startDate = LocalDate.now().plusDays(1);
+        endDate = startDate.plusDays(windowDays - 1L);
+
+        Random random = new Random(42);
+        LocalDate date = startDate;
+        while (!date.isAfter(endDate)) {
+            int nights = 1 + random.nextInt(4);
+            if (random.nextDouble() < density) {
+                reserve(date, date.plusDays(nights - 1L));
+                date = date.plusDays(nights);
+            } else {
+                date = date.plusDays(1);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<LocalDate> getAvailability() {
+        return campsiteReservationService.getAvailability(1L, startDate, endDate);
+    }
+
+    private void reserve(LocalDate from, LocalDate to) {
+        try {
+            campsiteReservationService.reserve(ReservationDTO.builder()
+                                                             .camperFullName("John Doe")
+                                                             .camperEmail("john@example.com")
+                                                             .startDate(from)
+                                                             .endDate(to)
+                                                             .build());
+        } catch (ReservationConflictException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.khattab.islandcampsitereservation.benchmark;
+
+import com.khattab.islandcampsitereservation.IslandCampsiteReservationApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+//Boots the application against an in-memory H2 database; embedded-h2.properties replaces application.properties so no MySQL credentials are needed
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        //DevTools reads this as a system property only, and its restart classloader must stay out of the forked benchmark JVM
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        String[] args = Stream.concat(Stream.of("--spring.config.location=classpath:/embedded-h2.properties"),
+                                      Arrays.stream(properties).map(property -> "--" + property))
+                              .toArray(String[]::new);
+        return new SpringApplicationBuilder(IslandCampsiteReservationApplication.class).run(args);
+    }
+}
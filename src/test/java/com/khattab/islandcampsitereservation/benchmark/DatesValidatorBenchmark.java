@@ -0,0 +1,45 @@
+package com.khattab.islandcampsitereservation.benchmark;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.validation.CustomDatesValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatesValidatorBenchmark {
+
+    private final CustomDatesValidator customDatesValidator = new CustomDatesValidator();
+    private final ReservationDTO validReservation = ReservationDTO.builder()
+                                                                 .startDate(LocalDate.now().plusDays(2))
+                                                                 .endDate(LocalDate.now().plusDays(4))
+                                                                 .build();
+    private final ReservationDTO invalidReservation = ReservationDTO.builder()
+                                                                   .startDate(LocalDate.now().plusDays(2))
+                                                                   .endDate(LocalDate.now().plusDays(10))
+                                                                   .build();
+
+    @Benchmark
+    public boolean validDates() {
+        return customDatesValidator.isValid(validReservation, null);
+    }
+
+    @Benchmark
+    public boolean invalidDates() {
+        return customDatesValidator.isValid(invalidReservation, null);
+    }
+}
@@ -0,0 +1,91 @@
+package com.khattab.islandcampsitereservation.benchmark;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Threads keep moving a small set of bookings between free dates, so edits of the same booking collide at a rate set by reservations
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ModifyContentionBenchmark {
+
+    @Param({"pessimistic", "optimistic"})
+    private String concurrencyMode;
+
+    //Bookings the threads edit; fewer bookings means more edits of the same row at the same time
+    @Param({"1", "16"})
+    private int reservations;
+
+    private ConfigurableApplicationContext context;
+    private CampsiteReservationService campsiteReservationService;
+    private List<ReservationDTO> bookings;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReservationConflictException {
+        context = BenchmarkApplication.start("campsite.reservation.concurrency-mode=" + concurrencyMode);
+        campsiteReservationService = context.getBean(CampsiteReservationService.class);
+        LocalDate firstDay = LocalDate.now().plusDays(1);
+        //Each booking owns a private block of four days and only ever moves inside it, so a failed edit is always a lost race
+        bookings = new ArrayList<>();
+        for (int i = 0; i < reservations; i++) {
+            LocalDate startDate = firstDay.plusDays(4L * i);
+            bookings.add(campsiteReservationService.reserve(ReservationDTO.builder()
+                                                                          .camperFullName("John Doe")
+                                                                          .camperEmail("john@example.com")
+                                                                          .startDate(startDate)
+                                                                          .endDate(startDate)
+                                                                          .build()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean modify() throws ReservationConflictException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ReservationDTO booking = bookings.get(random.nextInt(bookings.size()));
+        LocalDate startDate = booking.getStartDate().plusDays(random.nextInt(4));
+        ReservationDTO modified = ReservationDTO.builder()
+                                                .camperFullName(booking.getCamperFullName())
+                                                .camperEmail(booking.getCamperEmail())
+                                                .startDate(startDate)
+                                                .endDate(startDate)
+                                                .build();
+        try {
+            campsiteReservationService.modifyReservation(String.valueOf(booking.getId()), modified);
+            return true;
+        } catch (OptimisticLockingFailureException e) {
+            return false;
+        }
+    }
+}
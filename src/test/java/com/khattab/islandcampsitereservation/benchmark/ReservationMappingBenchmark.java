@@ -0,0 +1,55 @@
+package com.khattab.islandcampsitereservation.benchmark;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.mapper.ReservationMapper;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+//ModelMapper is kept as a test dependency only so the hand-rolled mapper can be compared against it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReservationMappingBenchmark {
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final ReservationMapper reservationMapper = new ReservationMapper();
+    private final ReservationDTO reservationDTO = new ReservationDTO(null, 1L, "John Doe", "john@example.com",
+            LocalDate.now().plusDays(2), LocalDate.now().plusDays(4));
+    private final Reservation reservation = new Reservation(1L, 1L, "John Doe", "john@example.com",
+            LocalDate.now().plusDays(2), LocalDate.now().plusDays(4));
+
+    @Benchmark
+    public Reservation modelMapperToEntity() {
+        return modelMapper.map(reservationDTO, Reservation.class);
+    }
+
+    @Benchmark
+    public Reservation reservationMapperToEntity() {
+        return reservationMapper.toEntity(reservationDTO);
+    }
+
+    @Benchmark
+    public ReservationDTO modelMapperToDTO() {
+        return modelMapper.map(reservation, ReservationDTO.class);
+    }
+
+    @Benchmark
+    public ReservationDTO reservationMapperToDTO() {
+        return reservationMapper.toDTO(reservation);
+    }
+}
@@ -0,0 +1,103 @@
+package com.khattab.islandcampsitereservation.benchmark;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Every winning booking is cancelled straight away so the window never fills up and conflicts stay a function of contention
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ReserveContentionBenchmark {
+
+    //Days the concurrent bookings are spread over; fewer days means more overlapping requests
+    @Param({"7", "60"})
+    private int contendedDays;
+
+    private ConfigurableApplicationContext context;
+    private CampsiteReservationService campsiteReservationService;
+    private LocalDate firstDay;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        campsiteReservationService = context.getBean(CampsiteReservationService.class);
+        firstDay = LocalDate.now().plusDays(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    //Outcomes per iteration, reported next to the throughput. A lock failure is a write that ran out of retries waiting
+    //for locks or losing deadlocks, which clients get as 503, not a night with no spot left
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long booked;
+        public long conflicts;
+        public long lockFailures;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            booked = 0;
+            conflicts = 0;
+            lockFailures = 0;
+        }
+    }
+
+    @Benchmark
+    public void reserveAndCancel(Outcomes outcomes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate startDate = firstDay.plusDays(random.nextInt(contendedDays));
+        ReservationDTO reservationDTO = ReservationDTO.builder()
+                                                      .camperFullName("John Doe")
+                                                      .camperEmail("john@example.com")
+                                                      .startDate(startDate)
+                                                      .endDate(startDate.plusDays(random.nextInt(3)))
+                                                      .build();
+        ReservationDTO reserved;
+        try {
+            reserved = campsiteReservationService.reserve(reservationDTO);
+        } catch (ReservationConflictException e) {
+            outcomes.conflicts++;
+            return;
+        } catch (ConcurrencyFailureException e) {
+            outcomes.lockFailures++;
+            return;
+        }
+        outcomes.booked++;
+        try {
+            campsiteReservationService.cancelReservation(String.valueOf(reserved.getId()));
+        } catch (ConcurrencyFailureException e) {
+            //The booking stays and keeps its nights
+            outcomes.lockFailures++;
+        }
+    }
+}
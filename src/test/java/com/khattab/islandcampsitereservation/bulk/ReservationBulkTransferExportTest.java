@@ -0,0 +1,122 @@
+package com.khattab.islandcampsitereservation.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.khattab.islandcampsitereservation.dto.AvailabilityCapacityDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationImportResultDTO;
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//Exports run through JdbcTemplate against a real schema; the import side books through a service stub that saves directly
+@DataJpaTest(properties = "spring.config.location=classpath:/embedded-h2.properties")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class ReservationBulkTransferExportTest {
+
+    private final LocalDate startDate = LocalDate.now().plusDays(2);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testExportTo_ShouldWriteEveryReservationAsOneLineInIdOrder() throws Exception {
+        List<Reservation> seeded = reservationRepository.saveAllAndFlush(List.of(
+                new Reservation(null, 1L, "John Doe", "john@example.com", startDate, startDate.plusDays(1)),
+                new Reservation(null, 2L, "Jane Smith", "jane@example.com", startDate, startDate.plusDays(2)),
+                new Reservation(null, 1L, "Jim Beam", "jim@example.com", startDate.plusDays(3), startDate.plusDays(3))));
+
+        List<ReservationDTO> exported = read(export());
+
+        assertEquals(seeded.stream().map(Reservation::getId).toList(), exported.stream().map(ReservationDTO::getId).toList());
+        assertEquals(List.of("1 John Doe john@example.com " + startDate + " " + startDate.plusDays(1),
+                             "2 Jane Smith jane@example.com " + startDate + " " + startDate.plusDays(2),
+                             "1 Jim Beam jim@example.com " + startDate.plusDays(3) + " " + startDate.plusDays(3)),
+                     exported.stream().map(ReservationBulkTransferExportTest::describe).toList());
+    }
+
+    @Test
+    public void testExportTo_ThenImportFrom_ShouldRecreateTheSameReservations() throws Exception {
+        reservationRepository.saveAllAndFlush(List.of(
+                new Reservation(null, 1L, "John Doe", "john@example.com", startDate, startDate.plusDays(1)),
+                new Reservation(null, 2L, "Jane Smith", "jane@example.com", startDate, startDate.plusDays(2))));
+        byte[] exported = export();
+        reservationRepository.deleteAllInBatch();
+
+        ReservationImportResultDTO result = transfer(bookingDirectly()).importFrom(new ByteArrayInputStream(exported));
+
+        assertEquals(2, result.getImported());
+        assertEquals(0, result.getRejected());
+        assertEquals(read(exported).stream().map(ReservationBulkTransferExportTest::describe).toList(),
+                     read(export()).stream().map(ReservationBulkTransferExportTest::describe).toList());
+    }
+
+    private byte[] export() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        transfer(mock(CampsiteReservationService.class)).exportTo(output);
+        return output.toByteArray();
+    }
+
+    //Every night starts with a free spot on each site, and accepted batches are saved as they come
+    private CampsiteReservationService bookingDirectly() throws Exception {
+        CampsiteReservationService campsiteReservationService = mock(CampsiteReservationService.class);
+        when(campsiteReservationService.getRemainingCapacity(anyLong(), any(), any())).thenAnswer(invocation -> {
+            LocalDate firstNight = invocation.getArgument(1);
+            LocalDate lastNight = invocation.getArgument(2);
+            List<AvailabilityCapacityDTO> capacity = new ArrayList<>();
+            for (long night = 0; night <= ChronoUnit.DAYS.between(firstNight, lastNight); night++)
+                capacity.add(new AvailabilityCapacityDTO(firstNight.plusDays(night), 1));
+            return capacity;
+        });
+        when(campsiteReservationService.reserveAll(anyList())).thenAnswer(invocation -> {
+            List<ReservationDTO> batch = invocation.getArgument(0);
+            reservationRepository.saveAllAndFlush(batch.stream()
+                    .map(dto -> new Reservation(null, dto.getSiteId(), dto.getCamperFullName(), dto.getCamperEmail(),
+                            dto.getStartDate(), dto.getEndDate()))
+                    .toList());
+            return List.copyOf(batch);
+        });
+        return campsiteReservationService;
+    }
+
+    private ReservationBulkTransfer transfer(CampsiteReservationService campsiteReservationService) {
+        return new ReservationBulkTransfer(campsiteReservationService, new CampsiteSites(2, 1), jdbcTemplate,
+                Validation.buildDefaultValidatorFactory().getValidator(), objectMapper, 500);
+    }
+
+    private List<ReservationDTO> read(byte[] ndjson) throws Exception {
+        List<ReservationDTO> reservations = new ArrayList<>();
+        for (String line : new String(ndjson, StandardCharsets.UTF_8).split("\n"))
+            reservations.add(objectMapper.readValue(line, ReservationDTO.class));
+        return reservations;
+    }
+
+    private static String describe(ReservationDTO reservationDTO) {
+        return String.join(" ", String.valueOf(reservationDTO.getSiteId()), reservationDTO.getCamperFullName(),
+                reservationDTO.getCamperEmail(), String.valueOf(reservationDTO.getStartDate()), String.valueOf(reservationDTO.getEndDate()));
+    }
+}
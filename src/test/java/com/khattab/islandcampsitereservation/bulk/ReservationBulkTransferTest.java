@@ -0,0 +1,128 @@
+package com.khattab.islandcampsitereservation.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.khattab.islandcampsitereservation.dto.AvailabilityCapacityDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationImportResultDTO;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReservationBulkTransferTest {
+
+    private final LocalDate startDate = LocalDate.now().plusDays(2);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private CampsiteReservationService campsiteReservationService;
+    private List<Integer> persistedBatchSizes;
+
+    @BeforeEach
+    void setUp() {
+        campsiteReservationService = mock(CampsiteReservationService.class);
+        persistedBatchSizes = new ArrayList<>();
+        //Every night of the window starts with the one spot a site has
+        when(campsiteReservationService.getRemainingCapacity(eq(1L), any(), any())).thenAnswer(invocation -> {
+            LocalDate firstNight = invocation.getArgument(1);
+            LocalDate lastNight = invocation.getArgument(2);
+            List<AvailabilityCapacityDTO> capacity = new ArrayList<>();
+            for (long night = 0; night <= ChronoUnit.DAYS.between(firstNight, lastNight); night++)
+                capacity.add(new AvailabilityCapacityDTO(firstNight.plusDays(night), 1));
+            return capacity;
+        });
+    }
+
+    @Test
+    public void testImportFrom_ShouldBookValidLinesInBatchesAndReportTheRest() throws Exception {
+        when(campsiteReservationService.reserveAll(anyList())).thenAnswer(invocation -> {
+            List<ReservationDTO> batch = invocation.getArgument(0);
+            persistedBatchSizes.add(batch.size());
+            return List.copyOf(batch);
+        });
+        String lines = String.join("\n",
+                line(7L, "John Doe", startDate, startDate.plusDays(1)),
+                "{not json",
+                line(null, "Jane Smith", startDate.minusDays(5), startDate.minusDays(4)),
+                "",
+                line(null, "Jim Beam", startDate.plusDays(1), startDate.plusDays(2)),
+                line(null, "Jack Daniels", startDate.plusDays(3), startDate.plusDays(3)),
+                line(null, "Johnnie Walker", startDate.plusDays(5), startDate.plusDays(6)));
+
+        ReservationImportResultDTO result = transfer(2).importFrom(stream(lines));
+
+        assertEquals(3, result.getImported());
+        assertEquals(3, result.getRejected());
+        assertEquals(3, result.getErrors().size());
+        assertTrue(result.getErrors().get(0).startsWith("Line 2:"));
+        assertTrue(result.getErrors().get(1).startsWith("Line 3:"));
+        assertTrue(result.getErrors().get(2).startsWith("Line 5: Reservation conflict"));
+        assertEquals(List.of(2, 1), persistedBatchSizes);
+    }
+
+    @Test
+    public void testImportFrom_ShouldNotCarryOverExportedIds() throws Exception {
+        when(campsiteReservationService.reserveAll(anyList())).thenAnswer(invocation -> {
+            List<ReservationDTO> batch = invocation.getArgument(0);
+            assertNull(batch.get(0).getId());
+            assertEquals(1L, batch.get(0).getSiteId());
+            return List.copyOf(batch);
+        });
+
+        ReservationImportResultDTO result = transfer(10).importFrom(stream(line(7L, "John Doe", startDate, startDate)));
+
+        assertEquals(1, result.getImported());
+    }
+
+    @Test
+    public void testImportFrom_WhenBatchConflictsWithLiveBooking_ShouldSettleEachLineIndividually() throws Exception {
+        when(campsiteReservationService.reserveAll(anyList())).thenThrow(new ReservationConflictException("taken"));
+        when(campsiteReservationService.reserve(any())).thenAnswer(invocation -> {
+            ReservationDTO reservationDTO = invocation.getArgument(0);
+            if (reservationDTO.getCamperFullName().equals("Jane Smith"))
+                throw new ReservationConflictException("taken");
+            return reservationDTO;
+        });
+        String lines = String.join("\n",
+                line(null, "John Doe", startDate, startDate),
+                line(null, "Jane Smith", startDate.plusDays(2), startDate.plusDays(2)));
+
+        ReservationImportResultDTO result = transfer(10).importFrom(stream(lines));
+
+        assertEquals(1, result.getImported());
+        assertEquals(List.of("Line 2: taken"), result.getErrors());
+        verify(campsiteReservationService, times(2)).reserve(any());
+    }
+
+    private ReservationBulkTransfer transfer(int importBatchSize) {
+        return new ReservationBulkTransfer(campsiteReservationService, new CampsiteSites(1, 1), mock(JdbcTemplate.class),
+                Validation.buildDefaultValidatorFactory().getValidator(), objectMapper, importBatchSize);
+    }
+
+    private String line(Long id, String camperFullName, LocalDate startDate, LocalDate endDate) throws Exception {
+        return objectMapper.writeValueAsString(new ReservationDTO(id, null, camperFullName, "camper@example.com", startDate, endDate));
+    }
+
+    private static ByteArrayInputStream stream(String lines) {
+        return new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8));
+    }
+}
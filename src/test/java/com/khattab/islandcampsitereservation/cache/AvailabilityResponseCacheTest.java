@@ -0,0 +1,142 @@
+package com.khattab.islandcampsitereservation.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.khattab.islandcampsitereservation.dto.AvailabilityFormat;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AvailabilityResponseCacheTest {
+
+    private final LocalDate startDate = LocalDate.of(2023, 8, 1);
+    private final LocalDate endDate = LocalDate.of(2023, 8, 3);
+    private AvailabilityResponseCache availabilityResponseCache;
+    private AtomicInteger computations;
+    private Supplier<List<LocalDate>> availability;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                                                      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        availabilityResponseCache = new AvailabilityResponseCache(objectMapper, 16);
+        computations = new AtomicInteger();
+        availability = () -> {
+            computations.incrementAndGet();
+            return List.of(startDate, endDate);
+        };
+    }
+
+    @Test
+    public void testGet_SecondCallForSameRange_ShouldServeCachedBytes() {
+        byte[] first = availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+        byte[] second = availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+
+        assertEquals("[\"2023-08-01\",\"2023-08-03\"]", new String(second, StandardCharsets.UTF_8));
+        assertEquals(first, second);
+        assertEquals(1, computations.get());
+        assertEquals(1, availabilityResponseCache.getHitCount());
+        assertEquals(1, availabilityResponseCache.getMissCount());
+    }
+
+    @Test
+    public void testBindTo_ShouldPublishHitsMissesAndSize() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        availabilityResponseCache.bindTo(meterRegistry);
+
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+
+        assertEquals(1, meterRegistry.get("campsite.availability.cache.requests").tag("result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("campsite.availability.cache.requests").tag("result", "miss").functionCounter().count());
+        assertEquals(1, meterRegistry.get("campsite.availability.cache.size").gauge().value());
+    }
+
+    @Test
+    public void testGet_OtherFormatForSameRange_ShouldBeCachedSeparately() {
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+        byte[] ranges = availabilityResponseCache.get(AvailabilityFormat.RANGES, null, startDate, endDate, () -> List.of());
+
+        assertEquals("[]", new String(ranges, StandardCharsets.UTF_8));
+        assertEquals(2, availabilityResponseCache.getMissCount());
+    }
+
+    @Test
+    public void testOnReservationChanged_ShouldEvictOnlyOverlappingRanges() {
+        LocalDate laterStartDate = LocalDate.of(2023, 8, 10);
+        LocalDate laterEndDate = LocalDate.of(2023, 8, 12);
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, laterStartDate, laterEndDate, availability);
+
+        availabilityResponseCache.onReservationChanged(
+                ReservationChangedEvent.reserved(1L, 1L, LocalDate.of(2023, 8, 3), LocalDate.of(2023, 8, 4)));
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, laterStartDate, laterEndDate, availability);
+
+        assertEquals(3, computations.get());
+    }
+
+    @Test
+    public void testOnReservationChanged_Modification_ShouldEvictPreviousDates() {
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+
+        availabilityResponseCache.onReservationChanged(new ReservationChangedEvent(1L, 1L,
+                LocalDate.of(2023, 8, 2), LocalDate.of(2023, 8, 2),
+                LocalDate.of(2023, 9, 2), LocalDate.of(2023, 9, 3)));
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    public void testGet_ChangeCommittedWhileComputing_ShouldNotCacheStaleResponse() {
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, () -> {
+            availabilityResponseCache.onReservationChanged(ReservationChangedEvent.reserved(1L, 1L, startDate, startDate));
+            return availability.get();
+        });
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+
+        assertEquals(2, computations.get());
+        assertEquals(0, availabilityResponseCache.getHitCount());
+    }
+
+    @Test
+    public void testGet_WhenFull_ShouldEvictTheLeastRecentlyUsedRange() {
+        AvailabilityResponseCache twoEntryCache = new AvailabilityResponseCache(new ObjectMapper(), 2);
+        Supplier<List<Integer>> response = () -> {
+            computations.incrementAndGet();
+            return List.of();
+        };
+        twoEntryCache.get(AvailabilityFormat.DATES, null, startDate, endDate, response);
+        twoEntryCache.get(AvailabilityFormat.DATES, null, startDate, startDate, response);
+        twoEntryCache.get(AvailabilityFormat.DATES, null, startDate, endDate, response);
+
+        twoEntryCache.get(AvailabilityFormat.DATES, null, endDate, endDate, response);
+        assertEquals(2, twoEntryCache.getSize());
+        twoEntryCache.get(AvailabilityFormat.DATES, null, endDate, endDate, response);
+        twoEntryCache.get(AvailabilityFormat.DATES, null, startDate, endDate, response);
+        twoEntryCache.get(AvailabilityFormat.DATES, null, startDate, startDate, response);
+
+        assertEquals(4, computations.get());
+    }
+
+    @Test
+    public void testClear_ShouldDropAllEntries() {
+        availabilityResponseCache.get(AvailabilityFormat.DATES, null, startDate, endDate, availability);
+
+        availabilityResponseCache.clear();
+
+        assertEquals(0, availabilityResponseCache.getSize());
+    }
+}
@@ -0,0 +1,94 @@
+package com.khattab.islandcampsitereservation.config;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestComponent;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Requests go through the embedded Tomcat on a random port, since MockMvc would run them on the test's own thread
+public class VirtualThreadConfigurationTest {
+
+    @Nested
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+            properties = "campsite.virtual-threads.enabled=true")
+    @Import(ThreadProbeConfiguration.class)
+    class Enabled {
+
+        @Autowired
+        private TestRestTemplate restTemplate;
+
+        @Test
+        public void testRequestAndAsyncWork_ShouldRunOnVirtualThreads() {
+            assertEquals(Map.of("request", true, "async", true), restTemplate.getForObject("/test/thread", Map.class));
+        }
+    }
+
+    @Nested
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+            properties = "campsite.virtual-threads.enabled=false")
+    @Import(ThreadProbeConfiguration.class)
+    class Disabled {
+
+        @Autowired
+        private TestRestTemplate restTemplate;
+
+        @Test
+        public void testRequestAndAsyncWork_ShouldFallBackToPlatformThreads() {
+            assertEquals(Map.of("request", false, "async", false), restTemplate.getForObject("/test/thread", Map.class));
+        }
+    }
+
+    @TestConfiguration
+    @EnableAsync
+    static class ThreadProbeConfiguration {
+
+        @Bean
+        AsyncThreadProbe asyncThreadProbe() {
+            return new AsyncThreadProbe();
+        }
+
+        @Bean
+        ThreadProbeController threadProbeController(AsyncThreadProbe asyncThreadProbe) {
+            return new ThreadProbeController(asyncThreadProbe);
+        }
+    }
+
+    static class AsyncThreadProbe {
+
+        @Async
+        public CompletableFuture<Boolean> isVirtual() {
+            return CompletableFuture.completedFuture(Thread.currentThread().isVirtual());
+        }
+    }
+
+    //Left out of component scanning, so only the contexts that import the probe map it
+    @TestComponent
+    @RestController
+    static class ThreadProbeController {
+
+        private final AsyncThreadProbe asyncThreadProbe;
+
+        ThreadProbeController(AsyncThreadProbe asyncThreadProbe) {
+            this.asyncThreadProbe = asyncThreadProbe;
+        }
+
+        @GetMapping("/test/thread")
+        public Map<String, Boolean> thread() {
+            return Map.of("request", Thread.currentThread().isVirtual(), "async", asyncThreadProbe.isVirtual().join());
+        }
+    }
+}
@@ -1,28 +1,49 @@
 package com.khattab.islandcampsitereservation.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.khattab.islandcampsitereservation.dto.AvailabilityCapacityDTO;
+import com.khattab.islandcampsitereservation.dto.AvailabilityFormat;
+import com.khattab.islandcampsitereservation.dto.AvailabilityIntervalDTO;
 import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import com.khattab.islandcampsitereservation.occupancy.DayOccupancyIndex;
 import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import com.khattab.islandcampsitereservation.stream.AvailabilityChangeBroadcaster;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@SpringBootTest
+@SpringBootTest(properties = "campsite.admission.enabled=true")
 @AutoConfigureMockMvc
 public class CampsiteRestControllerTest {
 
@@ -32,6 +53,12 @@ public class CampsiteRestControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private AvailabilityChangeBroadcaster availabilityChangeBroadcaster;
+
+    @Autowired
+    private DayOccupancyIndex dayOccupancyIndex;
+
     @MockBean
     private CampsiteReservationService campsiteReservationService;
 
@@ -53,12 +80,87 @@ public class CampsiteRestControllerTest {
                 LocalDate.now().plusDays(1)
         );
 
-        when(campsiteReservationService.getAvailability(startDate, endDate)).thenReturn(
+        when(campsiteReservationService.getAvailability(null, startDate, endDate)).thenReturn(
                 availabilityDates);
         this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/availability"))
                     .andExpect(status().isOk());
     }
 
+    @Test
+    void availabilityWithMatchingETagShouldReturnNotModifiedWithoutComputing() throws Exception {
+        String eTag = this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/availability"))
+                                  .andExpect(status().isOk())
+                                  .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        clearInvocations(campsiteReservationService);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/availability")
+                                                   .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                    .andExpect(status().isNotModified());
+        verify(campsiteReservationService, never()).getAvailability(any(), any(), any());
+    }
+
+    @Test
+    void availabilityShouldReturnRangesWhenRequestedByAcceptHeader() throws Exception {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = startDate.plusDays(2);
+        when(campsiteReservationService.getAvailableIntervals(null, startDate, endDate)).thenReturn(
+                List.of(new AvailabilityIntervalDTO(startDate, endDate)));
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get(
+                            String.format("/campsite/availability?startDate=%s&endDate=%s", startDate, endDate))
+                                                   .accept(AvailabilityFormat.RANGES.getMediaType()))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(AvailabilityFormat.RANGES.getMediaType()))
+                    .andExpect(content().json(String.format("[{\"from\":\"%s\",\"to\":\"%s\"}]", startDate, endDate)));
+    }
+
+    @Test
+    void availabilityShouldReturnRemainingSpotsWhenCapacityIsRequested() throws Exception {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = startDate.plusDays(1);
+        when(campsiteReservationService.getRemainingCapacity(null, startDate, endDate)).thenReturn(List.of(
+                new AvailabilityCapacityDTO(startDate, 3), new AvailabilityCapacityDTO(endDate, 0)));
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get(String.format(
+                            "/campsite/availability?startDate=%s&endDate=%s&format=capacity", startDate, endDate)))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(AvailabilityFormat.CAPACITY.getMediaType()))
+                    .andExpect(content().json(String.format(
+                            "[{\"date\":\"%s\",\"remaining\":3},{\"date\":\"%s\",\"remaining\":0}]", startDate, endDate)));
+    }
+
+    @Test
+    void availabilityShouldReturnClientErrorForUnknownFormat() throws Exception {
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/availability?format=csv"))
+                    .andExpect(status().is4xxClientError())
+                    .andExpect(result -> assertTrue(
+                            result.getResolvedException() instanceof IllegalArgumentException));
+    }
+
+    @Test
+    void availabilityStreamShouldPushCommittedChanges() throws Exception {
+        MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/availability/stream"))
+                                       .andExpect(request().asyncStarted())
+                                       .andReturn();
+
+        LocalDate startDate = LocalDate.now().plusDays(3);
+        ReservationChangedEvent reserved = ReservationChangedEvent.reserved(1L, 1L, startDate, startDate.plusDays(1));
+        //The index applies a change before it is published, and only nights it shows full are reported taken
+        dayOccupancyIndex.onReservationChanged(reserved);
+        try {
+            availabilityChangeBroadcaster.onReservationChanged(reserved);
+
+            //Delivery happens on the subscriber's own thread
+            for (int attempt = 0; attempt < 50 && !result.getResponse().getContentAsString().contains("taken"); attempt++)
+                Thread.sleep(20);
+            String stream = result.getResponse().getContentAsString();
+            assertTrue(stream.contains("event:availability-change"));
+            assertTrue(stream.contains(String.format("\"taken\":[{\"from\":\"%s\",\"to\":\"%s\"}]", startDate, startDate.plusDays(1))));
+        } finally {
+            dayOccupancyIndex.onReservationChanged(ReservationChangedEvent.cancelled(1L, 1L, startDate, startDate.plusDays(1)));
+        }
+    }
+
     @Test
     void reserveShouldReturnSuccess() throws Exception {
         when(campsiteReservationService.reserve(reservationDTO)).thenReturn(
@@ -69,6 +171,59 @@ public class CampsiteRestControllerTest {
                     .andExpect(status().isOk());
     }
 
+    @Test
+    void reserveWithRepeatedIdempotencyKeyShouldReturnOriginalReservationWithoutBookingAgain() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+        when(campsiteReservationService.reserve(any())).thenReturn(
+                reservationDTO);
+        for (int attempt = 0; attempt < 2; attempt++)
+            this.mockMvc.perform(MockMvcRequestBuilders.post("/campsite/reservation")
+                                                       .header("Idempotency-Key", idempotencyKey)
+                                                       .content(objectMapper.writeValueAsString(reservationDTO))
+                                                       .contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isOk())
+                        .andExpect(content().json("{\"id\":1}"));
+        verify(campsiteReservationService, times(1)).reserve(any());
+    }
+
+    @Test
+    void reserveWithIdempotencyKeyReusedForDifferentRequestShouldReturnUnprocessableEntity() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+        when(campsiteReservationService.reserve(any())).thenReturn(
+                reservationDTO);
+        this.mockMvc.perform(MockMvcRequestBuilders.post("/campsite/reservation")
+                                                   .header("Idempotency-Key", idempotencyKey)
+                                                   .content(objectMapper.writeValueAsString(reservationDTO))
+                                                   .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk());
+
+        reservationDTO.setEndDate(reservationDTO.getEndDate().minusDays(1));
+        this.mockMvc.perform(MockMvcRequestBuilders.post("/campsite/reservation")
+                                                   .header("Idempotency-Key", idempotencyKey)
+                                                   .content(objectMapper.writeValueAsString(reservationDTO))
+                                                   .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void reserveShouldReturnTooManyRequestsOnceCamperBudgetIsSpent() throws Exception {
+        reservationDTO.setCamperFullName("John Doe");
+        reservationDTO.setCamperEmail(UUID.randomUUID() + "@example.com");
+        when(campsiteReservationService.reserve(any())).thenReturn(
+                reservationDTO);
+        for (int attempt = 0; attempt < 3; attempt++)
+            this.mockMvc.perform(MockMvcRequestBuilders.post("/campsite/reservation")
+                                                       .content(objectMapper.writeValueAsString(reservationDTO))
+                                                       .contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isOk());
+
+        this.mockMvc.perform(MockMvcRequestBuilders.post("/campsite/reservation")
+                                                   .content(objectMapper.writeValueAsString(reservationDTO))
+                                                   .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isTooManyRequests())
+                    .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+    }
+
     @Test
     void cancellationShouldReturnSuccess() throws Exception {
         doNothing().when(campsiteReservationService).cancelReservation("1");
@@ -107,6 +262,17 @@ public class CampsiteRestControllerTest {
                             result.getResolvedException() instanceof IllegalArgumentException));
     }
 
+    //Staff endpoints are off unless campsite.operations.enabled is set
+    @Test
+    void staffEndpointsShouldNotBeServedByDefault() throws Exception {
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/reservations"))
+                    .andExpect(status().isNotFound());
+        //Only PATCH and DELETE are mapped under /campsite/reservation/{reservationId} then
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/reservation/export"))
+                    .andExpect(status().isMethodNotAllowed());
+        verify(campsiteReservationService, never()).listReservations(any(), any(), any(), any(), anyInt());
+    }
+
     @Test
     void availabilityShouldReturnClientErrorForStartDateInPast() throws Exception {
         LocalDate startDate = LocalDate.now().minusDays(1);
@@ -161,4 +327,23 @@ public class CampsiteRestControllerTest {
                             result.getResolvedException() instanceof MethodArgumentNotValidException));
     }
 
+    @Test
+    void cancelReservationShouldReturnConflictWhenOptimisticRetriesRunOut() throws Exception {
+        doThrow(new OptimisticLockingFailureException("Row was updated or deleted by another transaction"))
+                .when(campsiteReservationService).cancelReservation("1");
+
+        this.mockMvc.perform(MockMvcRequestBuilders.delete("/campsite/reservation/1"))
+                    .andExpect(status().isConflict());
+    }
+
+    @Test
+    void cancelReservationShouldAskToRetryWhenLockWaitsKeepTimingOut() throws Exception {
+        doThrow(new CannotAcquireLockException("Lock wait timeout exceeded; try restarting transaction"))
+                .when(campsiteReservationService).cancelReservation("1");
+
+        this.mockMvc.perform(MockMvcRequestBuilders.delete("/campsite/reservation/1"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
 }
@@ -0,0 +1,39 @@
+package com.khattab.islandcampsitereservation.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Metrics export is switched off in tests unless asked for, so this context is the only one with a Prometheus registry
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false)
+public class PrometheusEndpointTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void prometheusEndpointShouldExposeReservationMetrics() throws Exception {
+        this.mockMvc.perform(MockMvcRequestBuilders.delete("/campsite/reservation/999999"))
+                    .andExpect(status().isNotFound());
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/availability"))
+                    .andExpect(status().isOk());
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(containsString("campsite_api_errors_total{reason=\"not-found\",} 1.0")))
+                    .andExpect(content().string(containsString("campsite_availability_cache_requests_total{result=\"miss\",}")))
+                    .andExpect(content().string(containsString("campsite_reservation_read_seconds_bucket")))
+                    .andExpect(content().string(containsString("http_server_requests_seconds_bucket")))
+                    .andExpect(content().string(containsString("hikaricp_connections_pending{pool=")));
+    }
+}
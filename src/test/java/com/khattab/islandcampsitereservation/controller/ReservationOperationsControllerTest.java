@@ -0,0 +1,75 @@
+package com.khattab.islandcampsitereservation.controller;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationPageDTO;
+import com.khattab.islandcampsitereservation.exception.OperationsAccessDeniedException;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"campsite.operations.enabled=true", "campsite.operations.token=" + ReservationOperationsControllerTest.TOKEN})
+@AutoConfigureMockMvc
+public class ReservationOperationsControllerTest {
+
+    static final String TOKEN = "test-operations-token";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private CampsiteReservationService campsiteReservationService;
+
+    @Test
+    void listReservationsShouldReturnPageWithNextCursor() throws Exception {
+        when(campsiteReservationService.listReservations(null, null, "camper@example.com", null, 1)).thenReturn(
+                new ReservationPageDTO(List.of(ReservationDTO.builder().id(1L).build()), "next"));
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/reservations?camperEmail=camper@example.com&limit=1")
+                                                   .header(HttpHeaders.AUTHORIZATION, "Bearer " + TOKEN))
+                    .andExpect(status().isOk())
+                    .andExpect(content().json("{\"reservations\":[{\"id\":1}],\"nextCursor\":\"next\"}"));
+    }
+
+    @Test
+    void listReservationsShouldReturnClientErrorForStartDateAfterEndDate() throws Exception {
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/reservations?startDate=2023-08-05&endDate=2023-08-01")
+                                                   .header(HttpHeaders.AUTHORIZATION, "Bearer " + TOKEN))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(result -> assertTrue(
+                            result.getResolvedException() instanceof IllegalArgumentException));
+    }
+
+    @Test
+    void staffEndpointsShouldRejectMissingOrWrongToken() throws Exception {
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/reservations"))
+                    .andExpect(status().isUnauthorized())
+                    .andExpect(header().string(HttpHeaders.WWW_AUTHENTICATE, "Bearer"))
+                    .andExpect(result -> assertTrue(
+                            result.getResolvedException() instanceof OperationsAccessDeniedException));
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/reservation/1")
+                                                   .header(HttpHeaders.AUTHORIZATION, "Bearer wrong-token"))
+                    .andExpect(status().isUnauthorized());
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/campsite/reservation/export")
+                                                   .header(HttpHeaders.AUTHORIZATION, TOKEN))
+                    .andExpect(status().isUnauthorized());
+
+        verify(campsiteReservationService, never()).getReservation(any());
+    }
+}
@@ -0,0 +1,35 @@
+package com.khattab.islandcampsitereservation.entity;
+
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReservationOutboxEventTest {
+
+    private final LocalDate startDate = LocalDate.of(2023, 8, 1);
+    private final LocalDateTime occurredAt = LocalDateTime.of(2023, 7, 20, 10, 0);
+
+    @Test
+    public void testOf_ShouldDeriveChangeTypeFromEvent() {
+        assertEquals(ReservationOutboxEvent.ChangeType.RESERVED, ReservationOutboxEvent.of(
+                ReservationChangedEvent.reserved(1L, 1L, startDate, startDate), occurredAt).getChangeType());
+        assertEquals(ReservationOutboxEvent.ChangeType.CANCELLED, ReservationOutboxEvent.of(
+                ReservationChangedEvent.cancelled(1L, 1L, startDate, startDate), occurredAt).getChangeType());
+        assertEquals(ReservationOutboxEvent.ChangeType.MODIFIED, ReservationOutboxEvent.of(new ReservationChangedEvent(1L, 1L,
+                startDate, startDate, startDate.plusDays(1), startDate.plusDays(1)), occurredAt).getChangeType());
+    }
+
+    @Test
+    public void testToString() {
+        ReservationOutboxEvent outboxEvent = ReservationOutboxEvent.of(
+                ReservationChangedEvent.reserved(7L, 1L, startDate, startDate.plusDays(1)), occurredAt);
+
+        assertEquals("ReservationOutboxEvent{id=null, ChangeType=RESERVED, ReservationId=7" +
+                ", SiteId=1, PreviousStartDate=null, PreviousEndDate=null, StartDate=2023-08-01, EndDate=2023-08-02" +
+                ", OccurredAt=2023-07-20T10:00, PublishedAt=null}", outboxEvent.toString());
+    }
+}
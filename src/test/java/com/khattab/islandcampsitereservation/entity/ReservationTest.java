@@ -10,11 +10,12 @@ public class ReservationTest {
 
     @Test
     public void testToString() {
-        Reservation reservation = new Reservation(1L,"John Doe","john@example.com",
+        Reservation reservation = new Reservation(1L,1L,"John Doe","john@example.com",
                 LocalDate.of(2023, 7, 30), LocalDate.of(2023, 8, 5));
 
         String expectedString = "Reservation{" +
                 "id=1" +
+                ", SiteId=1" +
                 ", CamperFullName='John Doe'" +
                 ", CamperEmail='john@example.com'" +
                 ", StartDate=2023-07-30" +
@@ -0,0 +1,102 @@
+package com.khattab.islandcampsitereservation.entity.id;
+
+import com.khattab.islandcampsitereservation.config.IdBlockConfiguration;
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import org.hibernate.SessionEventListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.config.location=classpath:/embedded-h2.properties",
+        "spring.jpa.properties.hibernate.session.events.auto=com.khattab.islandcampsitereservation.entity.id.PooledIdGeneratorTest$BatchCounter",
+        //The test's transaction holds the only request connection, so a block claimed on that pool would time out
+        "spring.datasource.hikari.maximum-pool-size=1",
+        "spring.datasource.hikari.connection-timeout=250"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({IdBlockConfiguration.class, IdBlockAligner.class})
+public class PooledIdGeneratorTest {
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+    @Autowired
+    private IdBlockAligner idBlockAligner;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void resetCounter() {
+        BatchCounter.BATCHES.set(0);
+    }
+
+    @Test
+    public void testReservationsAreInsertedInOneBatch() {
+        List<Reservation> reservations = IntStream.range(0, 10)
+                .mapToObj(i -> new Reservation(null, 1L, "John Doe", "john@example.com",
+                        LocalDate.of(2023, 8, 1).plusDays(i * 4L), LocalDate.of(2023, 8, 2).plusDays(i * 4L)))
+                .toList();
+
+        List<Reservation> saved = reservationRepository.saveAll(reservations);
+        reservationRepository.flush();
+
+        assertEquals(1, BatchCounter.BATCHES.get());
+        assertEquals(10, saved.stream().map(Reservation::getId).distinct().count());
+    }
+
+    @Test
+    public void testIdsComeFromOneBlock() {
+        Long firstId = reservationRepository.save(new Reservation(null, 1L, "John Doe", "john@example.com",
+                LocalDate.of(2023, 9, 1), LocalDate.of(2023, 9, 2))).getId();
+        Long secondId = reservationRepository.save(new Reservation(null, 1L, "Jane Doe", "jane@example.com",
+                LocalDate.of(2023, 9, 5), LocalDate.of(2023, 9, 6))).getId();
+
+        assertEquals(firstId + 1, secondId);
+    }
+
+    @Test
+    public void testBlocksAreClaimedWhileTheRequestPoolIsExhausted() {
+        List<Reservation> reservations = IntStream.range(0, 3 * PooledIdGenerator.DEFAULT_BLOCK_SIZE)
+                .mapToObj(i -> new Reservation(null, 1L, "John Doe", "john@example.com",
+                        LocalDate.of(2024, 1, 1).plusDays(i * 4L), LocalDate.of(2024, 1, 2).plusDays(i * 4L)))
+                .toList();
+
+        List<Reservation> saved = reservationRepository.saveAllAndFlush(reservations);
+
+        assertEquals(reservations.size(), saved.stream().map(Reservation::getId).distinct().count());
+    }
+
+    @Test
+    public void testAlignerMovesSegmentPastExistingIds() {
+        jdbcTemplate.update("INSERT INTO reservation (id, camper_full_name, camper_email, start_date, end_date) VALUES (?, ?, ?, ?, ?)",
+                500L, "John Doe", "john@example.com", LocalDate.of(2023, 10, 1), LocalDate.of(2023, 10, 2));
+
+        idBlockAligner.alignSegments();
+
+        Long nextValue = jdbcTemplate.queryForObject("SELECT next_val FROM id_block WHERE sequence_name = 'reservation'", Long.class);
+        assertEquals(501L, nextValue);
+    }
+
+    //Registered through hibernate.session.events.auto, so Hibernate instantiates one per session
+    public static class BatchCounter implements SessionEventListener {
+
+        static final AtomicInteger BATCHES = new AtomicInteger();
+
+        @Override
+        public void jdbcExecuteBatchStart() {
+            BATCHES.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.khattab.islandcampsitereservation.idempotency;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.exception.IdempotencyKeyReuseException;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IdempotencyKeyStoreTest {
+
+    private final LocalDate startDate = LocalDate.of(2023, 7, 30);
+    private PersistedIdempotencyKeys persistedIdempotencyKeys;
+    private IdempotencyKeyStore idempotencyKeyStore;
+
+    @BeforeEach
+    void setUp() {
+        persistedIdempotencyKeys = mock(PersistedIdempotencyKeys.class);
+        when(persistedIdempotencyKeys.find(anyString(), anyString(), any())).thenReturn(Optional.empty());
+        idempotencyKeyStore = new IdempotencyKeyStore(persistedIdempotencyKeys, 2, 60);
+    }
+
+    @Test
+    public void testReserve_WithSameKeyTwice_ShouldBookOnceAndAnswerTheRepeatFromMemory() throws Exception {
+        ReservationDTO request = reservation(null);
+        ReservationDTO reserved = reservation(7L);
+        when(persistedIdempotencyKeys.reserve(eq("key-1"), anyString(), eq(request))).thenReturn(reserved);
+
+        assertEquals(reserved, idempotencyKeyStore.reserve("key-1", request));
+        assertEquals(reserved, idempotencyKeyStore.reserve("key-1", reservation(null)));
+
+        verify(persistedIdempotencyKeys, times(1)).reserve(eq("key-1"), anyString(), any());
+    }
+
+    @Test
+    public void testReserve_ShouldOnlyAdmitBookingsThatAreNotReplays() throws Exception {
+        ReservationDTO request = reservation(null);
+        when(persistedIdempotencyKeys.reserve(eq("key-1"), anyString(), eq(request))).thenReturn(reservation(7L));
+        when(persistedIdempotencyKeys.find(eq("key-2"), anyString(), any())).thenReturn(Optional.of(reservation(8L)));
+        AtomicInteger admitted = new AtomicInteger();
+
+        idempotencyKeyStore.reserve("key-1", request, admitted::incrementAndGet);
+        idempotencyKeyStore.reserve("key-1", request, admitted::incrementAndGet);
+        idempotencyKeyStore.reserve("key-2", request, admitted::incrementAndGet);
+
+        assertEquals(1, admitted.get());
+    }
+
+    @Test
+    public void testReserve_WithSameKeyAndDifferentDates_ShouldRejectTheReuse() throws Exception {
+        when(persistedIdempotencyKeys.reserve(eq("key-1"), anyString(), any())).thenReturn(reservation(7L));
+        idempotencyKeyStore.reserve("key-1", reservation(null));
+
+        ReservationDTO otherDates = reservation(null);
+        otherDates.setEndDate(startDate.plusDays(1));
+        assertThrows(IdempotencyKeyReuseException.class, () -> idempotencyKeyStore.reserve("key-1", otherDates));
+    }
+
+    @Test
+    public void testReserve_WhenBookingFails_ShouldForgetTheKeySoItCanBeRetried() throws Exception {
+        ReservationDTO request = reservation(null);
+        when(persistedIdempotencyKeys.reserve(eq("key-1"), anyString(), eq(request)))
+                .thenThrow(new ReservationConflictException("taken"))
+                .thenReturn(reservation(7L));
+
+        assertThrows(ReservationConflictException.class, () -> idempotencyKeyStore.reserve("key-1", request));
+        assertEquals(7L, idempotencyKeyStore.reserve("key-1", request).getId());
+        assertEquals(1, idempotencyKeyStore.size());
+    }
+
+    @Test
+    public void testReserve_WhenAnotherInstanceClaimedTheKey_ShouldAnswerFromItsRow() throws Exception {
+        ReservationDTO request = reservation(null);
+        when(persistedIdempotencyKeys.reserve(eq("key-1"), anyString(), eq(request)))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(persistedIdempotencyKeys.find(eq("key-1"), anyString(), eq(request)))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(reservation(9L)));
+
+        assertEquals(9L, idempotencyKeyStore.reserve("key-1", request).getId());
+    }
+
+    @Test
+    public void testReserve_WhenMemoryIsFull_ShouldStillGoThroughTheTable() throws Exception {
+        when(persistedIdempotencyKeys.reserve(anyString(), anyString(), any())).thenReturn(reservation(7L));
+        idempotencyKeyStore.reserve("key-1", reservation(null));
+        idempotencyKeyStore.reserve("key-2", reservation(null));
+
+        idempotencyKeyStore.reserve("key-3", reservation(null));
+
+        assertEquals(2, idempotencyKeyStore.size());
+        verify(persistedIdempotencyKeys).reserve(eq("key-3"), anyString(), any());
+    }
+
+    @Test
+    public void testReserve_WithBlankKey_ShouldThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> idempotencyKeyStore.reserve(" ", reservation(null)));
+    }
+
+    private ReservationDTO reservation(Long id) {
+        return ReservationDTO.builder()
+                             .id(id)
+                             .camperFullName("John Doe")
+                             .camperEmail("john.doe@example.com")
+                             .startDate(startDate)
+                             .endDate(startDate.plusDays(2))
+                             .build();
+    }
+}
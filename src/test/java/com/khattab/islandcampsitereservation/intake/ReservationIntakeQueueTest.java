@@ -0,0 +1,211 @@
+package com.khattab.islandcampsitereservation.intake;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.exception.TooManyRequestsException;
+import com.khattab.islandcampsitereservation.occupancy.DayOccupancyIndex;
+import com.khattab.islandcampsitereservation.service.CampsiteReservationService;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReservationIntakeQueueTest {
+
+    private final LocalDate startDate = LocalDate.of(2023, 7, 30);
+    private CampsiteReservationService campsiteReservationService;
+    private ReservationIntakeQueue reservationIntakeQueue;
+
+    @BeforeEach
+    void setUp() {
+        campsiteReservationService = mock(CampsiteReservationService.class);
+        reservationIntakeQueue = new ReservationIntakeQueue(campsiteReservationService, mock(DayOccupancyIndex.class), new CampsiteSites(1, 1), 5, 100, 5000);
+    }
+
+    @Test
+    public void testDispatch_ShouldRejectLaterOverlappingRequestAndPersistWinnersTogether() throws Exception {
+        ReservationDTO first = reservation("John Doe", startDate, startDate.plusDays(2));
+        ReservationDTO overlapping = reservation("Jane Smith", startDate.plusDays(2), startDate.plusDays(3));
+        ReservationDTO disjoint = reservation("Jim Beam", startDate.plusDays(5), startDate.plusDays(6));
+        ReservationIntakeQueue.PendingReservation firstPending = new ReservationIntakeQueue.PendingReservation(first);
+        ReservationIntakeQueue.PendingReservation overlappingPending = new ReservationIntakeQueue.PendingReservation(overlapping);
+        ReservationIntakeQueue.PendingReservation disjointPending = new ReservationIntakeQueue.PendingReservation(disjoint);
+        when(campsiteReservationService.reserveAll(List.of(first, disjoint))).thenReturn(List.of(first, disjoint));
+
+        reservationIntakeQueue.dispatch(List.of(firstPending, overlappingPending, disjointPending));
+
+        assertEquals(first, firstPending.getResult().get());
+        assertEquals(disjoint, disjointPending.getResult().get());
+        ExecutionException conflict = assertThrows(ExecutionException.class, () -> overlappingPending.getResult().get());
+        assertInstanceOf(ReservationConflictException.class, conflict.getCause());
+    }
+
+    @Test
+    public void testDispatch_WithTwoSpotsPerNight_ShouldOnlyRejectTheThirdOverlappingRequest() throws Exception {
+        ReservationIntakeQueue twoSpotQueue = new ReservationIntakeQueue(campsiteReservationService, mock(DayOccupancyIndex.class),
+                new CampsiteSites(1, 2), 5, 100, 5000);
+        ReservationDTO first = reservation("John Doe", startDate, startDate.plusDays(2));
+        ReservationDTO second = reservation("Jane Smith", startDate.plusDays(1), startDate.plusDays(3));
+        ReservationDTO third = reservation("Jim Beam", startDate.plusDays(2), startDate.plusDays(2));
+        ReservationIntakeQueue.PendingReservation firstPending = new ReservationIntakeQueue.PendingReservation(first);
+        ReservationIntakeQueue.PendingReservation secondPending = new ReservationIntakeQueue.PendingReservation(second);
+        ReservationIntakeQueue.PendingReservation thirdPending = new ReservationIntakeQueue.PendingReservation(third);
+        when(campsiteReservationService.reserveAll(List.of(first, second))).thenReturn(List.of(first, second));
+
+        twoSpotQueue.dispatch(List.of(firstPending, secondPending, thirdPending));
+
+        assertEquals(first, firstPending.getResult().get());
+        assertEquals(second, secondPending.getResult().get());
+        ExecutionException conflict = assertThrows(ExecutionException.class, () -> thirdPending.getResult().get());
+        assertInstanceOf(ReservationConflictException.class, conflict.getCause());
+    }
+
+    @Test
+    public void testDispatch_WhenBatchConflictsWithExistingBooking_ShouldSettleEachWinnerIndividually() throws Exception {
+        ReservationDTO first = reservation("John Doe", startDate, startDate.plusDays(1));
+        ReservationDTO second = reservation("Jane Smith", startDate.plusDays(5), startDate.plusDays(6));
+        ReservationIntakeQueue.PendingReservation firstPending = new ReservationIntakeQueue.PendingReservation(first);
+        ReservationIntakeQueue.PendingReservation secondPending = new ReservationIntakeQueue.PendingReservation(second);
+        when(campsiteReservationService.reserveAll(anyList())).thenThrow(new ReservationConflictException("taken"));
+        when(campsiteReservationService.reserve(first)).thenReturn(first);
+        when(campsiteReservationService.reserve(second)).thenThrow(new ReservationConflictException("taken"));
+
+        reservationIntakeQueue.dispatch(List.of(firstPending, secondPending));
+
+        assertEquals(first, firstPending.getResult().get());
+        ExecutionException conflict = assertThrows(ExecutionException.class, () -> secondPending.getResult().get());
+        assertInstanceOf(ReservationConflictException.class, conflict.getCause());
+        verify(campsiteReservationService).reserve(second);
+    }
+
+    @Test
+    public void testReserve_ShouldCompleteThroughTheDispatcherThread() throws Exception {
+        ReservationDTO reservationDTO = reservation("John Doe", startDate, startDate.plusDays(1));
+        when(campsiteReservationService.reserveAll(List.of(reservationDTO))).thenReturn(List.of(reservationDTO));
+        reservationIntakeQueue.start();
+        try {
+            assertEquals(reservationDTO, reservationIntakeQueue.reserve(reservationDTO));
+        } finally {
+            reservationIntakeQueue.stop();
+        }
+    }
+
+    @Test
+    public void testReserve_AfterAFailedBatch_ShouldStillBeDispatched() throws Exception {
+        ReservationDTO failing = reservation("John Doe", startDate, startDate.plusDays(1));
+        ReservationDTO next = reservation("Jane Smith", startDate.plusDays(5), startDate.plusDays(6));
+        when(campsiteReservationService.reserveAll(List.of(failing))).thenThrow(new AssertionError("unexpected"));
+        when(campsiteReservationService.reserveAll(List.of(next))).thenReturn(List.of(next));
+        reservationIntakeQueue.start();
+        try {
+            ExecutionException failure = assertThrows(ExecutionException.class,
+                    () -> reservationIntakeQueue.submit(failing).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(AssertionError.class, failure.getCause());
+
+            assertEquals(next, reservationIntakeQueue.reserve(next));
+        } finally {
+            reservationIntakeQueue.stop();
+        }
+    }
+
+    @Test
+    public void testReserve_WhenStillQueuedAfterTheReplyTimeout_ShouldBeWithdrawn() throws Exception {
+        ReservationIntakeQueue impatientQueue = new ReservationIntakeQueue(campsiteReservationService, mock(DayOccupancyIndex.class),
+                new CampsiteSites(1, 1), 5, 100, 50);
+        ReservationDTO slow = reservation("John Doe", startDate, startDate.plusDays(1));
+        ReservationDTO queued = reservation("Jane Smith", startDate.plusDays(5), startDate.plusDays(6));
+        CountDownLatch taken = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            taken.countDown();
+            release.await();
+            return List.of(slow);
+        }).when(campsiteReservationService).reserveAll(List.of(slow));
+        impatientQueue.start();
+        try {
+            CompletableFuture<ReservationDTO> slowResult = impatientQueue.submit(slow);
+            assertTrue(taken.await(5, TimeUnit.SECONDS));
+
+            //The dispatcher is busy with the first batch, so this one never leaves the queue
+            assertThrows(TooManyRequestsException.class, () -> impatientQueue.reserve(queued));
+
+            release.countDown();
+            assertEquals(slow, slowResult.get(5, TimeUnit.SECONDS));
+            verify(campsiteReservationService, never()).reserveAll(List.of(queued));
+        } finally {
+            release.countDown();
+            impatientQueue.stop();
+        }
+    }
+
+    @Test
+    public void testReserve_WhenTheBatchOutlastsTheReplyTimeout_ShouldWaitForTheOutcome() throws Exception {
+        ReservationIntakeQueue impatientQueue = new ReservationIntakeQueue(campsiteReservationService, mock(DayOccupancyIndex.class),
+                new CampsiteSites(1, 1), 5, 100, 50);
+        ReservationDTO reservationDTO = reservation("John Doe", startDate, startDate.plusDays(1));
+        CountDownLatch taken = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            taken.countDown();
+            release.await();
+            return List.of(reservationDTO);
+        }).when(campsiteReservationService).reserveAll(anyList());
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        impatientQueue.start();
+        try {
+            Future<ReservationDTO> reserved = caller.submit(() -> impatientQueue.reserve(reservationDTO));
+            assertTrue(taken.await(5, TimeUnit.SECONDS));
+
+            //Well past the reply timeout: the batch may still commit, so the caller must not be told it failed
+            Thread.sleep(200);
+            assertFalse(reserved.isDone());
+
+            release.countDown();
+            assertEquals(reservationDTO, reserved.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            caller.shutdownNow();
+            impatientQueue.stop();
+        }
+    }
+
+    @Test
+    public void testSubmit_AfterStop_ShouldBeRejected() {
+        reservationIntakeQueue.start();
+        reservationIntakeQueue.stop();
+
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> reservationIntakeQueue.submit(reservation("John Doe", startDate, startDate.plusDays(1))).get());
+        assertInstanceOf(IllegalStateException.class, rejected.getCause());
+    }
+
+    private static ReservationDTO reservation(String camperFullName, LocalDate startDate, LocalDate endDate) {
+        return ReservationDTO.builder()
+                             .camperFullName(camperFullName)
+                             .camperEmail("camper@example.com")
+                             .startDate(startDate)
+                             .endDate(endDate)
+                             .build();
+    }
+}
@@ -0,0 +1,39 @@
+package com.khattab.islandcampsitereservation.mapper;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReservationMapperTest {
+
+    private final ReservationMapper reservationMapper = new ReservationMapper();
+
+    @Test
+    public void testToEntity_ShouldCopyAllFields() {
+        ReservationDTO reservationDTO = new ReservationDTO(1L, 1L, "John Doe", "john@example.com",
+                LocalDate.of(2023, 7, 30), LocalDate.of(2023, 8, 1));
+
+        Reservation reservation = reservationMapper.toEntity(reservationDTO);
+
+        assertEquals(new Reservation(1L, 1L, "John Doe", "john@example.com",
+                LocalDate.of(2023, 7, 30), LocalDate.of(2023, 8, 1)).toString(), reservation.toString());
+    }
+
+    @Test
+    public void testToDTO_ShouldCopyAllFields() {
+        Reservation reservation = new Reservation(1L, 1L, "John Doe", "john@example.com",
+                LocalDate.of(2023, 7, 30), LocalDate.of(2023, 8, 1));
+
+        ReservationDTO reservationDTO = reservationMapper.toDTO(reservation);
+
+        assertEquals(1L, reservationDTO.getId());
+        assertEquals("John Doe", reservationDTO.getCamperFullName());
+        assertEquals("john@example.com", reservationDTO.getCamperEmail());
+        assertEquals(LocalDate.of(2023, 7, 30), reservationDTO.getStartDate());
+        assertEquals(LocalDate.of(2023, 8, 1), reservationDTO.getEndDate());
+    }
+}
@@ -0,0 +1,75 @@
+package com.khattab.islandcampsitereservation.occupancy;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DateStripedLocksTest {
+
+    private final DateStripedLocks dateStripedLocks = new DateStripedLocks(16);
+
+    @Test
+    public void testTryLock_ShouldHoldEveryDateOfTheRangeUntilUnlocked() {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        LocalDate endDate = startDate.plusDays(3);
+
+        Runnable unlock = dateStripedLocks.tryLock(1L, startDate, endDate, 0);
+        startDate.datesUntil(endDate.plusDays(1)).forEach(date -> assertTrue(dateStripedLocks.isLocked(1L, date)));
+        unlock.run();
+
+        startDate.datesUntil(endDate.plusDays(1)).forEach(date -> assertFalse(dateStripedLocks.isLocked(1L, date)));
+    }
+
+    @Test
+    public void testTryLock_OverlappingRangeShouldWaitForRelease() throws Exception {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        Runnable unlock = dateStripedLocks.tryLock(1L, startDate, startDate.plusDays(2), 0);
+        CountDownLatch acquired = new CountDownLatch(1);
+
+        CompletableFuture<Void> overlappingBooking = CompletableFuture.runAsync(() -> {
+            dateStripedLocks.tryLock(1L, startDate.plusDays(2), startDate.plusDays(4), 10_000).run();
+            acquired.countDown();
+        });
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        unlock.run();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        overlappingBooking.join();
+    }
+
+    @Test
+    public void testTryLock_ShouldGiveUpAfterTheTimeoutAndReleaseWhatItTook() throws Exception {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        Runnable unlock = dateStripedLocks.tryLock(1L, startDate.plusDays(2), startDate.plusDays(2), 0);
+
+        Runnable overlapping = CompletableFuture.supplyAsync(
+                () -> dateStripedLocks.tryLock(1L, startDate, startDate.plusDays(3), 50)).get(5, TimeUnit.SECONDS);
+
+        assertNull(overlapping);
+        assertFalse(dateStripedLocks.isLocked(1L, startDate));
+        assertFalse(dateStripedLocks.isLocked(1L, startDate.plusDays(3)));
+        unlock.run();
+    }
+
+    @Test
+    public void testTryLock_ShouldTakeStripesAlreadyHeldByTheSameThreadWithoutWaiting() {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        Runnable unlock = dateStripedLocks.tryLock(1L, startDate, startDate.plusDays(2), 0);
+
+        Runnable unlockAgain = dateStripedLocks.tryLock(1L, startDate.plusDays(1), startDate.plusDays(2), 0);
+        assertNotNull(unlockAgain);
+        unlockAgain.run();
+
+        assertTrue(dateStripedLocks.isLocked(1L, startDate.plusDays(1)));
+        unlock.run();
+        assertFalse(dateStripedLocks.isLocked(1L, startDate.plusDays(1)));
+    }
+}
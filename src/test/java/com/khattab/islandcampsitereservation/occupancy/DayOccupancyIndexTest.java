@@ -0,0 +1,176 @@
+package com.khattab.islandcampsitereservation.occupancy;
+
+import com.khattab.islandcampsitereservation.dto.AvailabilityIntervalDTO;
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DayOccupancyIndexTest {
+
+    private final LocalDate today = LocalDate.now();
+    private ReservationRepository reservationRepository;
+    private DayOccupancyIndex dayOccupancyIndex;
+
+    @BeforeEach
+    void setUp() {
+        reservationRepository = mock(ReservationRepository.class);
+        dayOccupancyIndex = new DayOccupancyIndex(reservationRepository, new CampsiteSites(2, 1), 200);
+    }
+
+    @Test
+    public void testCovers_BeforeRebuild_ShouldBeFalse() {
+        assertFalse(dayOccupancyIndex.covers(1L, today, today.plusDays(1)));
+    }
+
+    @Test
+    public void testCovers_OutsideWindow_ShouldBeFalse() {
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(any())).thenReturn(List.of());
+        dayOccupancyIndex.rebuild();
+
+        assertTrue(dayOccupancyIndex.covers(1L, today, today.plusDays(199)));
+        assertFalse(dayOccupancyIndex.covers(1L, today.minusDays(1), today.plusDays(1)));
+        assertFalse(dayOccupancyIndex.covers(1L, today, today.plusDays(200)));
+    }
+
+    @Test
+    public void testGetFreeDates_ShouldExcludeReservedDatesAcrossWordBoundaries() {
+        LocalDate reservedStart = today.plusDays(62);
+        LocalDate reservedEnd = today.plusDays(65);
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(today)).thenReturn(List.of(
+                dateRange(1L, reservedStart, reservedEnd)));
+        dayOccupancyIndex.rebuild();
+
+        List<LocalDate> freeDates = dayOccupancyIndex.getFreeDates(1L, today.plusDays(60), today.plusDays(67));
+
+        assertEquals(List.of(today.plusDays(60), today.plusDays(61), today.plusDays(66), today.plusDays(67)), freeDates);
+    }
+
+    @Test
+    public void testOnReservationChanged_ShouldReleasePreviousDatesAndTakeNewOnes() {
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(today)).thenReturn(List.of(
+                dateRange(1L, today.plusDays(2), today.plusDays(3))));
+        dayOccupancyIndex.rebuild();
+
+        dayOccupancyIndex.onReservationChanged(new ReservationChangedEvent(1L, 1L,
+                today.plusDays(2), today.plusDays(3), today.plusDays(3), today.plusDays(4)));
+        dayOccupancyIndex.onReservationChanged(ReservationChangedEvent.reserved(2L, 1L, today.plusDays(6), today.plusDays(6)));
+
+        assertEquals(List.of(today.plusDays(1), today.plusDays(2), today.plusDays(5), today.plusDays(7)),
+                dayOccupancyIndex.getFreeDates(1L, today.plusDays(1), today.plusDays(7)));
+    }
+
+    @Test
+    public void testGetFreeIntervals_ShouldSplitAroundBookingsAcrossWordBoundaries() {
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(today)).thenReturn(List.of(
+                dateRange(1L, today.plusDays(62), today.plusDays(65)),
+                dateRange(2L, today.plusDays(70), today.plusDays(70)),
+                dateRange(3L, today.plusDays(130), today.plusDays(132))));
+        dayOccupancyIndex.rebuild();
+
+        List<AvailabilityIntervalDTO> freeIntervals = dayOccupancyIndex.getFreeIntervals(1L, today.plusDays(60), today.plusDays(131));
+
+        assertEquals(List.of(
+                        today.plusDays(60) + ".." + today.plusDays(61),
+                        today.plusDays(66) + ".." + today.plusDays(69),
+                        today.plusDays(71) + ".." + today.plusDays(129)),
+                freeIntervals.stream().map(interval -> interval.getFrom() + ".." + interval.getTo()).toList());
+    }
+
+    @Test
+    public void testGetFreeDates_ShouldOnlySeeReservationsOfTheSameSite() {
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(today)).thenReturn(List.of(
+                dateRange(1L, 1L, today.plusDays(2), today.plusDays(3)),
+                dateRange(2L, 2L, today.plusDays(3), today.plusDays(4))));
+        dayOccupancyIndex.rebuild();
+
+        assertEquals(List.of(today.plusDays(1), today.plusDays(4)), dayOccupancyIndex.getFreeDates(1L, today.plusDays(1), today.plusDays(4)));
+        assertEquals(List.of(today.plusDays(1), today.plusDays(2)), dayOccupancyIndex.getFreeDates(2L, today.plusDays(1), today.plusDays(4)));
+        assertFalse(dayOccupancyIndex.covers(3L, today, today.plusDays(1)));
+    }
+
+    @Test
+    public void testGetRemainingSpots_ShouldOnlyMarkANightFullOnceEverySpotIsTaken() {
+        DayOccupancyIndex twoSpotIndex = new DayOccupancyIndex(reservationRepository, new CampsiteSites(1, 2), 200);
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(today)).thenReturn(List.of(
+                dateRange(1L, today.plusDays(2), today.plusDays(3))));
+        twoSpotIndex.rebuild();
+        twoSpotIndex.onReservationChanged(ReservationChangedEvent.reserved(2L, 1L, today.plusDays(3), today.plusDays(4)));
+
+        assertEquals(List.of(2, 1, 0, 1), Arrays.stream(
+                twoSpotIndex.getRemainingSpots(1L, today.plusDays(1), today.plusDays(4))).boxed().toList());
+        assertFalse(twoSpotIndex.isFree(1L, today.plusDays(2), today.plusDays(3)));
+        assertTrue(twoSpotIndex.isFree(1L, today.plusDays(4), today.plusDays(4)));
+
+        twoSpotIndex.onReservationChanged(ReservationChangedEvent.cancelled(1L, 1L, today.plusDays(2), today.plusDays(3)));
+
+        assertEquals(List.of(today.plusDays(1), today.plusDays(2), today.plusDays(3), today.plusDays(4)),
+                twoSpotIndex.getFreeDates(1L, today.plusDays(1), today.plusDays(4)));
+    }
+
+    @Test
+    public void testRebuild_AfterMidnight_ShouldMoveTheWindowAndPickUpWritesThatPublishedNoChange() {
+        Clock clock = mock(Clock.class);
+        when(clock.getZone()).thenReturn(ZoneId.systemDefault());
+        when(clock.instant()).thenReturn(today.atTime(23, 59).atZone(ZoneId.systemDefault()).toInstant());
+        DayOccupancyIndex clockedIndex = new DayOccupancyIndex(reservationRepository, new CampsiteSites(1, 1), 200, clock);
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(today)).thenReturn(List.of());
+        clockedIndex.rebuild();
+        assertFalse(clockedIndex.covers(1L, today.plusDays(1), today.plusDays(200)));
+
+        LocalDate tomorrow = today.plusDays(1);
+        when(clock.instant()).thenReturn(tomorrow.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        //Booked straight into the database, so no change was ever published for it
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(tomorrow)).thenReturn(List.of(
+                dateRange(1L, tomorrow.plusDays(2), tomorrow.plusDays(2))));
+        clockedIndex.rebuild();
+
+        assertTrue(clockedIndex.covers(1L, tomorrow.plusDays(1), tomorrow.plusDays(199)));
+        assertFalse(clockedIndex.covers(1L, today, tomorrow));
+        assertEquals(List.of(tomorrow.plusDays(1), tomorrow.plusDays(3)),
+                clockedIndex.getFreeDates(1L, tomorrow.plusDays(1), tomorrow.plusDays(3)));
+    }
+
+    @Test
+    public void testRebuild_WhenAChangeArrivesDuringTheLoad_ShouldNotCountItTwice() {
+        DayOccupancyIndex twoSpotIndex = new DayOccupancyIndex(reservationRepository, new CampsiteSites(1, 2), 200);
+        ReservationDateRange committed = dateRange(1L, today.plusDays(2), today.plusDays(2));
+        //The booking commits before the load reads it, but its change is only handed over while the load is running
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(today))
+                .thenAnswer(invocation -> {
+                    twoSpotIndex.onReservationChanged(ReservationChangedEvent.reserved(1L, 1L, today.plusDays(2), today.plusDays(2)));
+                    return List.of(committed);
+                })
+                .thenReturn(List.of(committed));
+
+        twoSpotIndex.rebuild();
+
+        assertEquals(List.of(1), Arrays.stream(twoSpotIndex.getRemainingSpots(1L, today.plusDays(2), today.plusDays(2))).boxed().toList());
+    }
+
+    private static ReservationDateRange dateRange(Long id, LocalDate startDate, LocalDate endDate) {
+        return dateRange(id, 1L, startDate, endDate);
+    }
+
+    private static ReservationDateRange dateRange(Long id, Long siteId, LocalDate startDate, LocalDate endDate) {
+        return new SpelAwareProxyProjectionFactory().createProjection(ReservationDateRange.class,
+                new Reservation(id, siteId, "John Doe", "john@example.com", startDate, endDate));
+    }
+}
@@ -0,0 +1,105 @@
+package com.khattab.islandcampsitereservation.occupancy;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReservationDateLockAspectTest {
+
+    private final LocalDate startDate = LocalDate.of(2023, 7, 30);
+    private final DateStripedLocks dateStripedLocks = new DateStripedLocks(16);
+    private final ReservationRepository reservationRepository = mock(ReservationRepository.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void testLockDates_ShouldHoldTheRequestedDatesForTheWholeCallOnly() {
+        Booking booking = proxy(new Booking(), 1000);
+
+        List<Boolean> locked = booking.reserve(reservation(startDate, startDate.plusDays(2)));
+
+        assertEquals(List.of(true, true, true), locked);
+        assertFalse(dateStripedLocks.isLocked(1L, startDate));
+        assertEquals(1, meterRegistry.get("campsite.reservation.lock.wait").tag("lock", "date-stripes").timer().count());
+    }
+
+    @Test
+    public void testLockDates_ShouldCoverTheCurrentAndTheRequestedDatesOfAReservation() {
+        Reservation current = new Reservation(5L, 1L, "John Doe", "john@example.com", startDate, startDate.plusDays(1));
+        when(reservationRepository.findDateRangeById(5L)).thenReturn(Optional.of(
+                new SpelAwareProxyProjectionFactory().createProjection(ReservationDateRange.class, current)));
+        Booking booking = proxy(new Booking(), 1000);
+
+        List<Boolean> locked = booking.modify("5", reservation(startDate.plusDays(3), startDate.plusDays(4)));
+
+        assertEquals(List.of(true, true, true, true, true), locked);
+    }
+
+    @Test
+    public void testLockDates_ShouldFailWithCannotAcquireLockWhenTheDatesStayTaken() throws Exception {
+        Booking booking = proxy(new Booking(), 50);
+        Runnable unlock = dateStripedLocks.tryLock(1L, startDate.plusDays(1), startDate.plusDays(1), 0);
+        try {
+            CompletableFuture<List<Boolean>> waitingBooking =
+                    CompletableFuture.supplyAsync(() -> booking.reserve(reservation(startDate, startDate.plusDays(2))));
+
+            Exception failure = assertThrows(Exception.class, () -> waitingBooking.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(CannotAcquireLockException.class, failure.getCause());
+        } finally {
+            unlock.run();
+        }
+    }
+
+    private Booking proxy(Booking target, long lockTimeoutMillis) {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new ReservationDateLockAspect(dateStripedLocks, reservationRepository, new CampsiteSites(1, 1),
+                meterRegistry, lockTimeoutMillis));
+        return proxyFactory.getProxy();
+    }
+
+    private static ReservationDTO reservation(LocalDate startDate, LocalDate endDate) {
+        return ReservationDTO.builder().startDate(startDate).endDate(endDate).build();
+    }
+
+    //Reports which of the first nights of the stay it found locked while running
+    public class Booking {
+
+        @LockReservationDates
+        public List<Boolean> reserve(ReservationDTO reservationDTO) {
+            return lockedNights(startDate, reservationDTO.getEndDate());
+        }
+
+        @LockReservationDates(ofReservationId = true)
+        public List<Boolean> modify(String reservationId, ReservationDTO reservationDTO) {
+            return lockedNights(startDate, reservationDTO.getEndDate());
+        }
+
+        private List<Boolean> lockedNights(LocalDate from, LocalDate to) {
+            List<Boolean> locked = new ArrayList<>();
+            from.datesUntil(to.plusDays(1)).forEach(date -> locked.add(dateStripedLocks.isLocked(1L, date)));
+            return locked;
+        }
+    }
+}
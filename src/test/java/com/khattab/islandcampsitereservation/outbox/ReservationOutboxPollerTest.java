@@ -0,0 +1,80 @@
+package com.khattab.islandcampsitereservation.outbox;
+
+import com.khattab.islandcampsitereservation.entity.ReservationOutboxEvent;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import com.khattab.islandcampsitereservation.repository.ReservationOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReservationOutboxPollerTest {
+
+    private ReservationOutboxRepository reservationOutboxRepository;
+    private ReservationOutboxSink firstSink;
+    private ReservationOutboxSink secondSink;
+    private List<ReservationOutboxEvent> batch;
+
+    @BeforeEach
+    void setUp() {
+        reservationOutboxRepository = mock(ReservationOutboxRepository.class);
+        firstSink = mock(ReservationOutboxSink.class);
+        secondSink = mock(ReservationOutboxSink.class);
+        LocalDate startDate = LocalDate.of(2023, 8, 1);
+        batch = List.of(
+                ReservationOutboxEvent.of(ReservationChangedEvent.reserved(1L, 1L, startDate, startDate.plusDays(1)), LocalDateTime.now()),
+                ReservationOutboxEvent.of(ReservationChangedEvent.cancelled(1L, 1L, startDate, startDate.plusDays(1)), LocalDateTime.now()));
+        when(reservationOutboxRepository.findUnpublishedForUpdate(PageRequest.of(0, 10))).thenReturn(batch);
+    }
+
+    @Test
+    public void testPublishPending_ShouldHandBatchToEverySinkAndMarkItPublished() {
+        new ReservationOutboxPoller(reservationOutboxRepository, List.of(firstSink, secondSink), 10, 168).publishPending();
+
+        verify(firstSink).publish(batch);
+        verify(secondSink).publish(batch);
+        batch.forEach(event -> assertNotNull(event.getPublishedAt()));
+    }
+
+    @Test
+    public void testPublishPending_SinkFails_ShouldLeaveBatchUnpublished() {
+        doThrow(new IllegalStateException("sink down")).when(secondSink).publish(batch);
+
+        assertThrows(IllegalStateException.class, () ->
+                new ReservationOutboxPoller(reservationOutboxRepository, List.of(firstSink, secondSink), 10, 168).publishPending());
+
+        batch.forEach(event -> assertNull(event.getPublishedAt()));
+    }
+
+    @Test
+    public void testPublishPending_NoSinks_ShouldNotClaimRows() {
+        new ReservationOutboxPoller(reservationOutboxRepository, List.of(), 10, 168).publishPending();
+
+        verify(reservationOutboxRepository, never()).findUnpublishedForUpdate(any());
+    }
+
+    @Test
+    public void testPurgePublished_ShouldDeleteFullBatchesUntilOneComesUpShort() {
+        when(reservationOutboxRepository.deletePublishedBefore(any(), eq(ReservationOutboxPoller.PURGE_BATCH_SIZE)))
+                .thenReturn(ReservationOutboxPoller.PURGE_BATCH_SIZE, ReservationOutboxPoller.PURGE_BATCH_SIZE, 3);
+
+        new ReservationOutboxPoller(reservationOutboxRepository, List.of(firstSink), 10, 168).purgePublished();
+
+        verify(reservationOutboxRepository, times(3)).deletePublishedBefore(any(), eq(ReservationOutboxPoller.PURGE_BATCH_SIZE));
+    }
+}
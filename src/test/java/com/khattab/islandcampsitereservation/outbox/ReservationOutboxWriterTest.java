@@ -0,0 +1,39 @@
+package com.khattab.islandcampsitereservation.outbox;
+
+import com.khattab.islandcampsitereservation.entity.ReservationOutboxEvent;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import com.khattab.islandcampsitereservation.repository.ReservationOutboxRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ReservationOutboxWriterTest {
+
+    private final ReservationOutboxRepository reservationOutboxRepository = mock(ReservationOutboxRepository.class);
+    private final ReservationChangedEvent event = ReservationChangedEvent.reserved(1L, 1L, LocalDate.of(2023, 8, 1), LocalDate.of(2023, 8, 2));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnReservationChanged_WithSink_ShouldRecordTheChange() {
+        new ReservationOutboxWriter(reservationOutboxRepository, List.of(mock(ReservationOutboxSink.class))).onReservationChanged(event);
+
+        ArgumentCaptor<List<ReservationOutboxEvent>> saved = ArgumentCaptor.forClass(List.class);
+        verify(reservationOutboxRepository).saveAll(saved.capture());
+        assertEquals(List.of(1L), saved.getValue().stream().map(ReservationOutboxEvent::getReservationId).toList());
+    }
+
+    @Test
+    public void testOnReservationChanged_NoSinks_ShouldRecordNothing() {
+        new ReservationOutboxWriter(reservationOutboxRepository, List.of()).onReservationChanged(event);
+
+        verify(reservationOutboxRepository, never()).saveAll(any());
+    }
+}
@@ -0,0 +1,47 @@
+package com.khattab.islandcampsitereservation.repository;
+
+import com.khattab.islandcampsitereservation.entity.ReservationOutboxEvent;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = "spring.config.location=classpath:/embedded-h2.properties")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class ReservationOutboxRepositoryTest {
+
+    private final LocalDate startDate = LocalDate.now().plusDays(2);
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @Autowired
+    private ReservationOutboxRepository reservationOutboxRepository;
+
+    @Test
+    public void testDeletePublishedBefore_ShouldKeepRecentAndUnpublishedRows() {
+        ReservationOutboxEvent recent = event(now.minusHours(1));
+        ReservationOutboxEvent unpublished = event(null);
+        reservationOutboxRepository.saveAllAndFlush(List.of(
+                event(now.minusDays(9)), event(now.minusDays(8)), event(now.minusDays(8)), recent, unpublished));
+
+        assertEquals(2, reservationOutboxRepository.deletePublishedBefore(now.minusDays(7), 2));
+        assertEquals(1, reservationOutboxRepository.deletePublishedBefore(now.minusDays(7), 2));
+        assertEquals(0, reservationOutboxRepository.deletePublishedBefore(now.minusDays(7), 2));
+
+        assertEquals(List.of(recent.getId(), unpublished.getId()),
+                     reservationOutboxRepository.findAll().stream().map(ReservationOutboxEvent::getId).sorted().toList());
+    }
+
+    private ReservationOutboxEvent event(LocalDateTime publishedAt) {
+        ReservationOutboxEvent event = ReservationOutboxEvent.of(
+                ReservationChangedEvent.reserved(1L, 1L, startDate, startDate.plusDays(1)), now.minusDays(10));
+        event.setPublishedAt(publishedAt);
+        return event;
+    }
+}
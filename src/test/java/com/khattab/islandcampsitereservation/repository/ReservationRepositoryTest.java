@@ -0,0 +1,63 @@
+package com.khattab.islandcampsitereservation.repository;
+
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.validation.CustomDatesValidator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = "spring.config.location=classpath:/embedded-h2.properties")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class ReservationRepositoryTest {
+
+    private final LocalDate startDate = LocalDate.now().plusDays(10);
+    private final LocalDate endDate = startDate.plusDays(2);
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    private Reservation longestEndingOnStartDate;
+    private Reservation startingOnEndDate;
+    private Reservation inside;
+    private Reservation otherSite;
+
+    @BeforeEach
+    void setUp() {
+        longestEndingOnStartDate = reservation(1L, startDate.minusDays(CustomDatesValidator.MAX_RESERVATION_LENGTH_DAYS), startDate);
+        inside = reservation(1L, startDate.plusDays(1), startDate.plusDays(1));
+        startingOnEndDate = reservation(1L, endDate, endDate.plusDays(3));
+        otherSite = reservation(2L, startDate, endDate);
+        reservationRepository.saveAllAndFlush(List.of(
+                longestEndingOnStartDate, inside, startingOnEndDate, otherSite,
+                reservation(1L, startDate.minusDays(4), startDate.minusDays(1)),
+                reservation(1L, endDate.plusDays(1), endDate.plusDays(2))));
+    }
+
+    @Test
+    public void testFindReservedDateRanges_ShouldReturnOnlyStaysOverlappingTheRangeOnTheSite() {
+        assertEquals(List.of(longestEndingOnStartDate.getId(), inside.getId(), startingOnEndDate.getId()),
+                     ids(reservationRepository.findReservedDateRanges(1L, startDate, endDate)));
+    }
+
+    @Test
+    public void testFindReservedDateRangesOfSites_ShouldApplyTheSameBoundsToEverySite() {
+        assertEquals(List.of(longestEndingOnStartDate.getId(), inside.getId(), startingOnEndDate.getId(), otherSite.getId()),
+                     ids(reservationRepository.findReservedDateRangesOfSites(List.of(1L, 2L), startDate, endDate)));
+    }
+
+    private Reservation reservation(long siteId, LocalDate startDate, LocalDate endDate) {
+        return new Reservation(null, siteId, "John Doe", "john@example.com", startDate, endDate);
+    }
+
+    private static List<Long> ids(List<ReservationDateRange> dateRanges) {
+        return dateRanges.stream().map(ReservationDateRange::getId).toList();
+    }
+}
@@ -0,0 +1,112 @@
+package com.khattab.islandcampsitereservation.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ConcurrencyFailureRetryAspectTest {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void testRetriesUntilTheRaceIsWon() {
+        EditableBooking booking = proxy(new EditableBooking(2, attempts));
+
+        assertEquals("edited", booking.edit());
+        assertEquals(3, attempts.get());
+        assertEquals(2, meterRegistry.get("campsite.reservation.write.retries")
+                                     .tags("operation", "edit", "cause", "optimistic-lock").counter().count());
+        assertEquals(1, meterRegistry.get("campsite.reservation.write")
+                                     .tags("operation", "edit", "outcome", "success").timer().count());
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() {
+        EditableBooking booking = proxy(new EditableBooking(5, attempts));
+
+        assertThrows(OptimisticLockingFailureException.class, booking::edit);
+        assertEquals(3, attempts.get());
+        assertEquals(1, meterRegistry.get("campsite.reservation.write")
+                                     .tags("operation", "edit", "outcome", "retries-exhausted").timer().count());
+    }
+
+    @Test
+    public void testRetriesLockWaitTimeouts() {
+        EditableBooking booking = proxy(new EditableBooking(1, attempts,
+                () -> new CannotAcquireLockException("could not execute statement",
+                        new SQLException("Lock wait timeout exceeded; try restarting transaction", "HY000", 1205))));
+
+        assertEquals("edited", booking.edit());
+        assertEquals(1, meterRegistry.get("campsite.reservation.write.retries")
+                                     .tags("operation", "edit", "cause", "lock-timeout").counter().count());
+    }
+
+    @Test
+    public void testTellsDeadlocksFromLockWaitTimeouts() {
+        CannotAcquireLockException deadlock = new CannotAcquireLockException("could not execute statement",
+                new SQLException("Deadlock found when trying to get lock; try restarting transaction", "40001", 1213));
+
+        assertEquals("deadlock", ConcurrencyFailureRetryAspect.causeOf(deadlock));
+        CannotAcquireLockException lockWaitTimeout = new CannotAcquireLockException("could not execute statement",
+                new SQLException("Lock wait timeout exceeded; try restarting transaction", "HY000", 1205));
+        assertEquals("lock-timeout", ConcurrencyFailureRetryAspect.causeOf(lockWaitTimeout));
+    }
+
+    @Test
+    public void testDoesNotRetryInsideACallersTransaction() {
+        EditableBooking booking = proxy(new EditableBooking(1, attempts));
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertThrows(OptimisticLockingFailureException.class, booking::edit);
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    private EditableBooking proxy(EditableBooking target) {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new ConcurrencyFailureRetryAspect(meterRegistry, 3, 1, 5));
+        return proxyFactory.getProxy();
+    }
+
+    //Fails with the given concurrency failure a number of times before an edit goes through
+    static class EditableBooking {
+
+        private final int failures;
+        private final AtomicInteger attempts;
+        private final Supplier<RuntimeException> failure;
+
+        EditableBooking(int failures, AtomicInteger attempts) {
+            this(failures, attempts,
+                    () -> new OptimisticLockingFailureException("Row was updated or deleted by another transaction"));
+        }
+
+        EditableBooking(int failures, AtomicInteger attempts, Supplier<RuntimeException> failure) {
+            this.failures = failures;
+            this.attempts = attempts;
+            this.failure = failure;
+        }
+
+        @RetryOnConcurrencyFailure
+        public String edit() {
+            if (attempts.incrementAndGet() <= failures)
+                throw failure.get();
+            return "edited";
+        }
+    }
+}
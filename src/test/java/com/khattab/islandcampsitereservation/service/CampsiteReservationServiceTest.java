@@ -1,20 +1,37 @@
 package com.khattab.islandcampsitereservation.service;
 
+import com.khattab.islandcampsitereservation.dto.AvailabilityBitmapDTO;
+import com.khattab.islandcampsitereservation.dto.AvailabilityIntervalDTO;
 import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import com.khattab.islandcampsitereservation.dto.ReservationPageDTO;
 import com.khattab.islandcampsitereservation.entity.Reservation;
 import com.khattab.islandcampsitereservation.exception.ReservationConflictException;
+import com.khattab.islandcampsitereservation.mapper.ReservationMapper;
+import com.khattab.islandcampsitereservation.occupancy.DateStripedLocks;
+import com.khattab.islandcampsitereservation.occupancy.DayOccupancyIndex;
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.repository.NightCapacityRepository;
 import com.khattab.islandcampsitereservation.repository.ReservationRepository;
 import com.khattab.islandcampsitereservation.service.impl.CampsiteReservationServiceImpl;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.modelmapper.ModelMapper;
+import org.mockito.Spy;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -22,9 +39,13 @@ import java.util.Optional;
 import static org.hamcrest.Matchers.any;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,22 +55,42 @@ public class CampsiteReservationServiceTest {
     @Mock
     private ReservationRepository reservationRepository;
 
+    @Mock
+    private NightCapacityRepository nightCapacityRepository;
+
     @InjectMocks
     private CampsiteReservationServiceImpl campsiteReservationService;
 
+    @Spy
+    private ReservationMapper reservationMapper;
+
+    @Mock
+    private DayOccupancyIndex dayOccupancyIndex;
+
+    @Spy
+    private DateStripedLocks dateStripedLocks = new DateStripedLocks(16);
+
+    @Spy
+    private CampsiteSites campsiteSites = new CampsiteSites(2, 1);
+
     @Mock
-    private ModelMapper modelMapper;
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
 
     @Test
     public void testGetAvailability_NoOverlappingReservations() {
         LocalDate startDate = LocalDate.of(2023, 7, 30);
         LocalDate endDate = LocalDate.of(2023, 8, 5);
 
-        // Simulate the behavior of the reservationRepository.findOverlappingReservationsForUpdate() method
-        when(reservationRepository.findOverlappingReservationsForUpdate(startDate, endDate))
+        // Simulate the behavior of the reservationRepository.findReservedDateRanges() method
+        when(reservationRepository.findReservedDateRanges(1L, startDate, endDate))
                 .thenReturn(Collections.emptyList());
 
-        List<LocalDate> availability = campsiteReservationService.getAvailability(startDate, endDate);
+        List<LocalDate> availability = campsiteReservationService.getAvailability(1L, startDate, endDate);
 
         // Verify that the list contains all dates between the startDate and endDate (inclusive) when there are no overlapping reservations
         List<LocalDate> expectedAvailability = Arrays.asList(
@@ -69,15 +110,17 @@ public class CampsiteReservationServiceTest {
         LocalDate startDate = LocalDate.of(2023, 7, 30);
         LocalDate endDate = LocalDate.of(2023, 8, 5);
 
-        // Simulate the behavior of the reservationRepository.findOverlappingReservationsForUpdate() method
-        List<Reservation> overlappingReservations = Arrays.asList(
-                new Reservation(1L,"email","fullname",startDate,startDate.plusDays(1)),
-                new Reservation(2L,"email","fullname",endDate,endDate)
+        // Simulate the behavior of the reservationRepository.findReservedDateRanges() method
+        List<ReservationDateRange> overlappingReservations = Arrays.asList(
+                projectionFactory.createProjection(ReservationDateRange.class,
+                        new Reservation(1L,1L,"email","fullname",startDate,startDate.plusDays(1))),
+                projectionFactory.createProjection(ReservationDateRange.class,
+                        new Reservation(2L,1L,"email","fullname",endDate,endDate))
         );
-        when(reservationRepository.findOverlappingReservationsForUpdate(startDate, endDate))
+        when(reservationRepository.findReservedDateRanges(1L, startDate, endDate))
                 .thenReturn(overlappingReservations);
 
-        List<LocalDate> availability = campsiteReservationService.getAvailability(startDate, endDate);
+        List<LocalDate> availability = campsiteReservationService.getAvailability(1L, startDate, endDate);
 
         // Verify that the list contains only the dates that do not overlap with existing reservations
         List<LocalDate> expectedAvailability = Arrays.asList(
@@ -89,44 +132,138 @@ public class CampsiteReservationServiceTest {
         assertEquals(expectedAvailability, availability);
     }
 
+    @Test
+    public void testGetAvailableIntervals_ShouldSweepReservationsInStartDateOrder() {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        LocalDate endDate = LocalDate.of(2023, 8, 10);
+
+        //The first reservation starts before the window, the next two touch each other
+        List<ReservationDateRange> reservations = Arrays.asList(
+                projectionFactory.createProjection(ReservationDateRange.class,
+                        new Reservation(1L,1L,"email","fullname",LocalDate.of(2023, 7, 28),LocalDate.of(2023, 7, 30))),
+                projectionFactory.createProjection(ReservationDateRange.class,
+                        new Reservation(2L,1L,"email","fullname",LocalDate.of(2023, 8, 2),LocalDate.of(2023, 8, 3))),
+                projectionFactory.createProjection(ReservationDateRange.class,
+                        new Reservation(3L,1L,"email","fullname",LocalDate.of(2023, 8, 4),LocalDate.of(2023, 8, 5)))
+        );
+        when(reservationRepository.findReservedDateRanges(1L, startDate, endDate)).thenReturn(reservations);
+
+        List<AvailabilityIntervalDTO> intervals = campsiteReservationService.getAvailableIntervals(1L, startDate, endDate);
+
+        assertEquals(List.of("2023-07-31..2023-08-01", "2023-08-06..2023-08-10"),
+                intervals.stream().map(interval -> interval.getFrom() + ".." + interval.getTo()).toList());
+    }
+
+    @Test
+    public void testGetAvailableIntervals_AnySite_ShouldMergeTheFreeIntervalsOfEverySite() {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        LocalDate endDate = LocalDate.of(2023, 8, 10);
+
+        //Site 1 is full until Aug 5th and site 2 from Aug 6th: the two free intervals touch and merge into one
+        when(reservationRepository.findReservedDateRangesOfSites(List.of(1L, 2L), startDate, endDate)).thenReturn(List.of(
+                projectionFactory.createProjection(ReservationDateRange.class,
+                        new Reservation(1L,1L,"email","fullname",LocalDate.of(2023, 7, 30),LocalDate.of(2023, 8, 5))),
+                projectionFactory.createProjection(ReservationDateRange.class,
+                        new Reservation(2L,2L,"email","fullname",LocalDate.of(2023, 8, 6),LocalDate.of(2023, 8, 10)))));
+
+        List<AvailabilityIntervalDTO> intervals = campsiteReservationService.getAvailableIntervals(null, startDate, endDate);
+
+        assertEquals(List.of("2023-07-30..2023-08-10"),
+                intervals.stream().map(interval -> interval.getFrom() + ".." + interval.getTo()).toList());
+        verify(reservationRepository, never()).findReservedDateRanges(anyLong(), isA(LocalDate.class), isA(LocalDate.class));
+    }
+
+    @Test
+    public void testGetAvailabilityBitmap_ShouldSetOneBitPerFreeDay() {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        LocalDate endDate = LocalDate.of(2023, 8, 9);
+
+        when(reservationRepository.findReservedDateRanges(1L, startDate, endDate)).thenReturn(List.of(
+                projectionFactory.createProjection(ReservationDateRange.class,
+                        new Reservation(1L,1L,"email","fullname",LocalDate.of(2023, 7, 31),LocalDate.of(2023, 8, 1)))));
+
+        AvailabilityBitmapDTO bitmap = campsiteReservationService.getAvailabilityBitmap(1L, startDate, endDate);
+
+        //Days 0 and 3..10 free: 0b11111001, 0b00000111
+        assertEquals(11, bitmap.getDays());
+        assertEquals(startDate, bitmap.getStartDate());
+        assertTrue(Arrays.equals(new byte[]{(byte) 0b11111001, 0b00000111}, Base64.getDecoder().decode(bitmap.getBitmap())));
+    }
+
+    @Test
+    public void testGetAvailability_CoveredByOccupancyIndex_ShouldNotQueryRepository() {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        LocalDate endDate = LocalDate.of(2023, 8, 1);
+        List<LocalDate> indexedAvailability = List.of(startDate, endDate);
+
+        when(dayOccupancyIndex.covers(1L, startDate, endDate)).thenReturn(true);
+        when(dayOccupancyIndex.getFreeDates(1L, startDate, endDate)).thenReturn(indexedAvailability);
+
+        List<LocalDate> availability = campsiteReservationService.getAvailability(1L, startDate, endDate);
+
+        assertEquals(indexedAvailability, availability);
+        verify(reservationRepository, never()).findReservedDateRanges(1L, startDate, endDate);
+    }
+
     @Test
     public void testReserve_WhenNoOverlappingReservations_ShouldReturnSuccessfulReservation() throws Exception {
         // Prepare test data
         LocalDate startDate = LocalDate.of(2023, 7, 30);
         LocalDate endDate = LocalDate.of(2023, 8, 5);
-        ReservationDTO reservationDTO = new ReservationDTO();
-
-        when(reservationRepository.findOverlappingReservationsForUpdate(startDate, endDate)).thenReturn(Collections.emptyList());
-
-        Reservation savedReservation = new Reservation();
-        when(reservationRepository.save(savedReservation)).thenReturn(savedReservation);
+        ReservationDTO reservationDTO = new ReservationDTO(null,1L,"fullname","email",startDate,endDate);
 
-        when(modelMapper.map(eq(reservationDTO), eq(Reservation.class))).thenReturn(savedReservation);
-        when(modelMapper.map(eq(savedReservation), eq(ReservationDTO.class))).thenReturn(reservationDTO);
+        Reservation savedReservation = new Reservation(1L,1L,"fullname","email",startDate,endDate);
+        when(nightCapacityRepository.takeSpot(1L, startDate, endDate)).thenReturn(7);
+        when(reservationRepository.save(isA(Reservation.class))).thenReturn(savedReservation);
 
         // Perform the test
         ReservationDTO result = campsiteReservationService.reserve(reservationDTO);
 
         assertNotNull(result);
+        assertEquals(1L, result.getId());
+    }
+
+    @Test
+    public void testReserve_WithoutSiteId_ShouldBookSiteOneAndLeaveTheRequestAsSent() throws Exception {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        LocalDate endDate = LocalDate.of(2023, 8, 1);
+        ReservationDTO reservationDTO = new ReservationDTO(null,null,"fullname","email",startDate,endDate);
+        when(nightCapacityRepository.takeSpot(1L, startDate, endDate)).thenReturn(3);
+        when(reservationRepository.save(isA(Reservation.class))).thenReturn(new Reservation(1L,1L,"fullname","email",startDate,endDate));
+
+        assertEquals(1L, campsiteReservationService.reserve(reservationDTO).getSiteId());
+        assertNull(reservationDTO.getSiteId());
     }
 
     @Test
     public void testReserve_WhenOverlappingReservationsExist_ShouldThrowReservationConflictException() throws Exception {
         LocalDate startDate = LocalDate.of(2023, 7, 30);
         LocalDate endDate = LocalDate.of(2023, 8, 5);
-        List<Reservation> overlappingReservations = Arrays.asList(
-                new Reservation(1L,"email","fullname",startDate,startDate.plusDays(1)),
-                new Reservation(2L,"email","fullname",endDate,endDate)
-        );
+        ReservationDTO reservationDTO = new ReservationDTO(1L,1L,"fullname","email",startDate,endDate);
 
-        when(reservationRepository.findOverlappingReservationsForUpdate(startDate, endDate)).thenReturn(overlappingReservations);
+        // Simulate two of the seven nights having no spot left, so the conditional update skips them
+        when(nightCapacityRepository.takeSpot(1L, startDate, endDate)).thenReturn(5);
 
-        ReservationDTO reservationDTO = new ReservationDTO(1L,"fullname","email",startDate,endDate);
         assertThrows(ReservationConflictException.class, () -> campsiteReservationService.reserve(reservationDTO));
+        verify(reservationRepository, never()).save(isA(Reservation.class));
     }
 
     @Test
-    public void testModifyReservation_ReservationExists_ShouldUpdateAndReturnModifiedReservationDTO() {
+    public void testReserve_WhenOccupancyIndexShowsDatesBooked_ShouldThrowWithoutTouchingRepository() {
+        LocalDate startDate = LocalDate.of(2023, 7, 30);
+        LocalDate endDate = LocalDate.of(2023, 8, 1);
+        ReservationDTO reservationDTO = new ReservationDTO(null,1L,"fullname","email",startDate,endDate);
+
+        when(dayOccupancyIndex.covers(1L, startDate, endDate)).thenReturn(true);
+        when(dayOccupancyIndex.isFree(1L, startDate, endDate)).thenReturn(false);
+
+        assertThrows(ReservationConflictException.class, () -> campsiteReservationService.reserve(reservationDTO));
+        verify(reservationRepository, never()).save(isA(Reservation.class));
+        verify(nightCapacityRepository, never()).takeSpot(anyLong(), isA(LocalDate.class), isA(LocalDate.class));
+    }
+
+    @Test
+    public void testModifyReservation_ReservationExists_ShouldUpdateAndReturnModifiedReservationDTO() throws Exception {
 
         String reservationId = "1";
         LocalDate startDate = LocalDate.of(2023, 8, 10);
@@ -134,9 +271,9 @@ public class CampsiteReservationServiceTest {
         LocalDate newStartDate = LocalDate.of(2023, 8, 15);
         LocalDate newEndDate = LocalDate.of(2023, 8, 20);
 
-        Reservation existingReservation = new Reservation(1L,"fullanme","email",startDate, endDate);
-        Reservation modifiedReservation = new Reservation(1L,"fullanme","email",newStartDate, newEndDate);
-        ReservationDTO modifiedReservationDTO = new ReservationDTO(1L,"fullanme","email",newStartDate, newEndDate);
+        Reservation existingReservation = new Reservation(1L,1L,"fullanme","email",startDate, endDate);
+        Reservation modifiedReservation = new Reservation(1L,1L,"fullanme","email",newStartDate, newEndDate);
+        ReservationDTO modifiedReservationDTO = new ReservationDTO(1L,1L,"fullanme","email",newStartDate, newEndDate);
 
 
         // Simulate the behavior of reservationRepository.findByIdWithLock()
@@ -144,6 +281,7 @@ public class CampsiteReservationServiceTest {
 
         // Simulate the behavior of reservationRepository.saveAndFlush()
         when(reservationRepository.saveAndFlush(existingReservation)).thenReturn(modifiedReservation);
+        when(nightCapacityRepository.takeSpot(1L, newStartDate, newEndDate)).thenReturn(6);
 
         // Perform the modifyReservation() method
         ReservationDTO result = campsiteReservationService.modifyReservation(reservationId, modifiedReservationDTO);
@@ -153,13 +291,47 @@ public class CampsiteReservationServiceTest {
         assertTrue(datesTheSame);
     }
 
+    @Test
+    public void testModifyReservation_NewDatesAlreadyBooked_ShouldThrowReservationConflictException() {
+        String reservationId = "1";
+        LocalDate newStartDate = LocalDate.of(2023, 8, 15);
+        LocalDate newEndDate = LocalDate.of(2023, 8, 17);
+        Reservation existingReservation = new Reservation(1L,1L,"fullanme","email",
+                LocalDate.of(2023, 8, 10), LocalDate.of(2023, 8, 12));
+        ReservationDTO modifiedReservationDTO = new ReservationDTO(1L,1L,"fullanme","email",newStartDate, newEndDate);
+
+        when(reservationRepository.findByIdWithLock(1L)).thenReturn(Optional.of(existingReservation));
+        when(nightCapacityRepository.takeSpot(1L, newStartDate, newEndDate)).thenReturn(1);
+
+        assertThrows(ReservationConflictException.class,
+                () -> campsiteReservationService.modifyReservation(reservationId, modifiedReservationDTO));
+        verify(nightCapacityRepository).releaseSpot(1L, LocalDate.of(2023, 8, 10), LocalDate.of(2023, 8, 12));
+        verify(reservationRepository, never()).saveAndFlush(existingReservation);
+    }
+
+    @Test
+    public void testModifyReservation_LockWaitTimeout_ShouldNotBeReportedAsAConflict() {
+        LocalDate newStartDate = LocalDate.of(2023, 8, 15);
+        LocalDate newEndDate = LocalDate.of(2023, 8, 17);
+        Reservation existingReservation = new Reservation(1L,1L,"fullanme","email",
+                LocalDate.of(2023, 8, 10), LocalDate.of(2023, 8, 12));
+        ReservationDTO modifiedReservationDTO = new ReservationDTO(1L,1L,"fullanme","email",newStartDate, newEndDate);
+
+        when(reservationRepository.findByIdWithLock(1L)).thenReturn(Optional.of(existingReservation));
+        when(nightCapacityRepository.takeSpot(1L, newStartDate, newEndDate))
+                .thenThrow(new CannotAcquireLockException("Lock wait timeout exceeded; try restarting transaction"));
+
+        assertThrows(CannotAcquireLockException.class,
+                () -> campsiteReservationService.modifyReservation("1", modifiedReservationDTO));
+    }
+
     @Test
     public void testModifyReservation_ReservationDoesNotExist_ShouldThrowEntityNotFoundException() {
         // Prepare test data
         String reservationId = "1";
         LocalDate newStartDate = LocalDate.of(2023, 8, 15);
         LocalDate newEndDate = LocalDate.of(2023, 8, 20);
-        ReservationDTO modifiedReservationDTO = new ReservationDTO(1L,"fullanme","email",newStartDate, newEndDate);
+        ReservationDTO modifiedReservationDTO = new ReservationDTO(1L,1L,"fullanme","email",newStartDate, newEndDate);
 
         // Simulate the behavior of reservationRepository.findByIdWithLock()
         when(reservationRepository.findByIdWithLock(1L)).thenReturn(Optional.empty());
@@ -169,5 +341,125 @@ public class CampsiteReservationServiceTest {
                 () -> campsiteReservationService.modifyReservation(reservationId, modifiedReservationDTO));
     }
 
+    @Test
+    public void testModifyReservation_OptimisticMode_ShouldNotLockTheReservationRow() throws ReservationConflictException {
+        CampsiteReservationServiceImpl optimisticService = optimisticService();
+        LocalDate newStartDate = LocalDate.of(2023, 8, 15);
+        LocalDate newEndDate = LocalDate.of(2023, 8, 17);
+        Reservation existingReservation = new Reservation(1L,1L,"fullanme","email",
+                LocalDate.of(2023, 8, 10), LocalDate.of(2023, 8, 12));
+        ReservationDTO modifiedReservationDTO = new ReservationDTO(1L,1L,"fullanme","email",newStartDate, newEndDate);
+
+        when(reservationRepository.findById(1L)).thenReturn(Optional.of(existingReservation));
+        when(reservationRepository.saveAndFlush(existingReservation)).thenReturn(existingReservation);
+        when(nightCapacityRepository.takeSpot(1L, newStartDate, newEndDate)).thenReturn(3);
+
+        ReservationDTO result = optimisticService.modifyReservation("1", modifiedReservationDTO);
+
+        assertEquals(newStartDate, result.getStartDate());
+        assertEquals(newEndDate, result.getEndDate());
+        verify(reservationRepository, never()).findByIdWithLock(anyLong());
+    }
+
+    @Test
+    public void testCancelReservation_OptimisticMode_ShouldFailBeforePublishingWhenTheVersionIsStale() {
+        CampsiteReservationServiceImpl optimisticService = optimisticService();
+        Reservation existingReservation = new Reservation(1L,1L,"fullanme","email",
+                LocalDate.of(2023, 8, 10), LocalDate.of(2023, 8, 12));
+
+        when(reservationRepository.findById(1L)).thenReturn(Optional.of(existingReservation));
+        doThrow(new ObjectOptimisticLockingFailureException(Reservation.class, 1L))
+                .when(reservationRepository).flush();
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> optimisticService.cancelReservation("1"));
+        verify(reservationRepository, never()).findByIdWithLock(anyLong());
+        verify(eventPublisher, never()).publishEvent(isA(Object.class));
+    }
+
+    @Test
+    public void testModifyReservation_ShouldRecordRowLockWaits() throws ReservationConflictException {
+        Reservation existingReservation = new Reservation(1L,1L,"fullanme","email",
+                LocalDate.of(2023, 8, 10), LocalDate.of(2023, 8, 12));
+        ReservationDTO modifiedReservationDTO = new ReservationDTO(1L,1L,"fullanme","email",
+                LocalDate.of(2023, 8, 15), LocalDate.of(2023, 8, 17));
 
+        when(reservationRepository.findByIdWithLock(1L)).thenReturn(Optional.of(existingReservation));
+        when(reservationRepository.saveAndFlush(existingReservation)).thenReturn(existingReservation);
+        when(nightCapacityRepository.takeSpot(1L, LocalDate.of(2023, 8, 15), LocalDate.of(2023, 8, 17))).thenReturn(3);
+
+        campsiteReservationService.modifyReservation("1", modifiedReservationDTO);
+
+        assertEquals(1, meterRegistry.get("campsite.reservation.lock.wait").tag("lock", "reservation-row").timer().count());
+    }
+
+    @Test
+    public void testModifyReservation_SameDates_ShouldLeaveTheBookingUntouched() throws ReservationConflictException {
+        LocalDate startDate = LocalDate.of(2023, 8, 10);
+        LocalDate endDate = LocalDate.of(2023, 8, 12);
+        Reservation existingReservation = new Reservation(1L,1L,"fullanme","email",startDate, endDate);
+
+        when(reservationRepository.findByIdWithLock(1L)).thenReturn(Optional.of(existingReservation));
+
+        ReservationDTO result = campsiteReservationService.modifyReservation("1",
+                new ReservationDTO(1L,1L,"fullanme","email",startDate, endDate));
+
+        assertEquals(startDate, result.getStartDate());
+        verify(nightCapacityRepository, never()).releaseSpot(anyLong(), isA(LocalDate.class), isA(LocalDate.class));
+        verify(eventPublisher, never()).publishEvent(isA(Object.class));
+    }
+
+    @Test
+    public void testListReservations_ShouldSeekTheNextPageFromTheCursorOfTheLastRow() {
+        LocalDate startDate = LocalDate.of(2023, 8, 10);
+        LocalDate endDate = LocalDate.of(2023, 8, 20);
+        ReservationDTO first = new ReservationDTO(7L,1L,"fullname","email",LocalDate.of(2023, 8, 9), LocalDate.of(2023, 8, 10));
+        ReservationDTO second = new ReservationDTO(3L,2L,"fullname","email",LocalDate.of(2023, 8, 12), LocalDate.of(2023, 8, 12));
+        ReservationDTO third = new ReservationDTO(5L,1L,"fullname","email",LocalDate.of(2023, 8, 12), LocalDate.of(2023, 8, 13));
+        //The first page starts early enough to catch stays that began before startDate
+        when(reservationRepository.findReservationPage(LocalDate.of(2023, 8, 7), 0L, startDate, endDate, PageRequest.of(0, 3)))
+                .thenReturn(List.of(first, second, third));
+        when(reservationRepository.findReservationPage(LocalDate.of(2023, 8, 12), 3L, startDate, endDate, PageRequest.of(0, 3)))
+                .thenReturn(List.of(third));
+
+        ReservationPageDTO firstPage = campsiteReservationService.listReservations(startDate, endDate, null, null, 2);
+        ReservationPageDTO lastPage = campsiteReservationService.listReservations(startDate, endDate, null, firstPage.getNextCursor(), 2);
+
+        assertEquals(List.of(first, second), firstPage.getReservations());
+        assertNotNull(firstPage.getNextCursor());
+        assertEquals(List.of(third), lastPage.getReservations());
+        assertNull(lastPage.getNextCursor());
+    }
+
+    @Test
+    public void testListReservations_ByCamperEmail_ShouldUseTheEmailIndexedQuery() {
+        when(reservationRepository.findReservationPageByCamperEmail("camper@example.com", LocalDate.of(1969, 12, 29), 0L,
+                LocalDate.of(1970, 1, 1), LocalDate.of(9999, 12, 31), PageRequest.of(0, 51)))
+                .thenReturn(Collections.emptyList());
+
+        ReservationPageDTO page = campsiteReservationService.listReservations(null, null, "camper@example.com", null, 50);
+
+        assertEquals(Collections.emptyList(), page.getReservations());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testListReservations_WithMalformedCursorOrLimit_ShouldThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> campsiteReservationService.listReservations(null, null, null, "not-a-cursor", 50));
+        assertThrows(IllegalArgumentException.class, () -> campsiteReservationService.listReservations(null, null, null, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> campsiteReservationService.listReservations(null, null, null, null,
+                CampsiteReservationServiceImpl.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    public void testGetReservation_NonExistingReservation_ShouldThrowEntityNotFoundException() {
+        when(reservationRepository.findReservationById(9L)).thenReturn(Optional.empty());
+
+        assertThrows(EntityNotFoundException.class, () -> campsiteReservationService.getReservation("9"));
+    }
+
+    private CampsiteReservationServiceImpl optimisticService() {
+        return new CampsiteReservationServiceImpl(reservationRepository, nightCapacityRepository, reservationMapper,
+                dayOccupancyIndex, dateStripedLocks, campsiteSites, eventPublisher, ConcurrencyMode.OPTIMISTIC, meterRegistry);
+    }
 }
@@ -0,0 +1,73 @@
+package com.khattab.islandcampsitereservation.service.impl;
+
+import com.khattab.islandcampsitereservation.entity.Reservation;
+import com.khattab.islandcampsitereservation.projection.ReservationDateRange;
+import com.khattab.islandcampsitereservation.repository.NightCapacityRepository;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NightCapacityProvisionerTest {
+
+    private final LocalDate today = LocalDate.now();
+    private NightCapacityRepository nightCapacityRepository;
+    private ReservationRepository reservationRepository;
+    private NightCapacityProvisioner nightCapacityProvisioner;
+
+    @BeforeEach
+    void setUp() {
+        nightCapacityRepository = mock(NightCapacityRepository.class);
+        reservationRepository = mock(ReservationRepository.class);
+        nightCapacityProvisioner = new NightCapacityProvisioner(nightCapacityRepository, reservationRepository,
+                new CampsiteSites(1, 3), 5);
+    }
+
+    @Test
+    public void testProvision_ShouldStartNewNightsFromTheReservationsAlreadyOnThem() {
+        when(nightCapacityRepository.findLastNight(1L)).thenReturn(today.plusDays(1));
+        when(reservationRepository.findReservedDateRanges(1L, today.plusDays(2), today.plusDays(4))).thenReturn(List.of(
+                dateRange(1L, today.plusDays(1), today.plusDays(2)),
+                dateRange(2L, today.plusDays(2), today.plusDays(3))));
+
+        nightCapacityProvisioner.provision();
+
+        verify(nightCapacityRepository).resize(3);
+        verify(nightCapacityRepository).deleteNightsBefore(today);
+        verify(nightCapacityRepository).provision(1L, today.plusDays(2), 3, 1);
+        verify(nightCapacityRepository).provision(1L, today.plusDays(3), 3, 2);
+        verify(nightCapacityRepository).provision(1L, today.plusDays(4), 3, 3);
+        verify(nightCapacityRepository, never()).provision(1L, today.plusDays(1), 3, 3);
+    }
+
+    @Test
+    public void testProvision_NightsProvisionedByAnotherInstance_ShouldBeSkipped() {
+        when(reservationRepository.findReservedDateRanges(1L, today, today.plusDays(4))).thenReturn(List.of());
+        doThrow(new DataIntegrityViolationException("Duplicate entry for key 'PRIMARY'"))
+                .when(nightCapacityRepository).provision(1L, today, 3, 3);
+
+        nightCapacityProvisioner.provision();
+
+        verify(nightCapacityRepository, times(5)).provision(anyLong(), isA(LocalDate.class), anyInt(), anyInt());
+    }
+
+    private static ReservationDateRange dateRange(Long id, LocalDate startDate, LocalDate endDate) {
+        return new SpelAwareProxyProjectionFactory().createProjection(ReservationDateRange.class,
+                new Reservation(id, 1L, "John Doe", "john@example.com", startDate, endDate));
+    }
+}
@@ -0,0 +1,112 @@
+package com.khattab.islandcampsitereservation.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.khattab.islandcampsitereservation.dto.AvailabilityChangeDTO;
+import com.khattab.islandcampsitereservation.dto.AvailabilityIntervalDTO;
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import com.khattab.islandcampsitereservation.occupancy.DayOccupancyIndex;
+import com.khattab.islandcampsitereservation.repository.ReservationRepository;
+import com.khattab.islandcampsitereservation.site.CampsiteSites;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AvailabilityChangeBroadcasterTest {
+
+    private final LocalDate day = LocalDate.now().plusDays(5);
+    private DayOccupancyIndex dayOccupancyIndex;
+    private AvailabilityChangeBroadcaster availabilityChangeBroadcaster;
+
+    @AfterEach
+    void tearDown() {
+        availabilityChangeBroadcaster.stop();
+    }
+
+    @Test
+    public void testChangeOf_Reservation_ShouldOnlyTakeDates() {
+        withSpotsPerNight(1);
+
+        AvailabilityChangeDTO change = apply(ReservationChangedEvent.reserved(1L, 1L, day, day.plusDays(2)));
+
+        assertEquals(List.of(), describe(change.getFreed()));
+        assertEquals(List.of(range(0, 2)), describe(change.getTaken()));
+    }
+
+    @Test
+    public void testChangeOf_Cancellation_ShouldOnlyFreeDates() {
+        withSpotsPerNight(1);
+        apply(ReservationChangedEvent.reserved(1L, 1L, day, day.plusDays(1)));
+
+        AvailabilityChangeDTO change = apply(ReservationChangedEvent.cancelled(1L, 1L, day, day.plusDays(1)));
+
+        assertEquals(List.of(range(0, 1)), describe(change.getFreed()));
+        assertEquals(List.of(), describe(change.getTaken()));
+    }
+
+    @Test
+    public void testChangeOf_OverlappingModification_ShouldReportOnlyTheDifference() {
+        withSpotsPerNight(1);
+        apply(ReservationChangedEvent.reserved(1L, 1L, day, day.plusDays(2)));
+
+        AvailabilityChangeDTO change = apply(new ReservationChangedEvent(1L, 1L, day, day.plusDays(2), day.plusDays(1), day.plusDays(3)));
+
+        assertEquals(List.of(range(0, 0)), describe(change.getFreed()));
+        assertEquals(List.of(range(3, 3)), describe(change.getTaken()));
+    }
+
+    @Test
+    public void testChangeOf_ModificationInsidePreviousDates_ShouldFreeBothEnds() {
+        withSpotsPerNight(1);
+        apply(ReservationChangedEvent.reserved(1L, 1L, day, day.plusDays(2)));
+
+        AvailabilityChangeDTO change = apply(new ReservationChangedEvent(1L, 1L, day, day.plusDays(2), day.plusDays(1), day.plusDays(1)));
+
+        assertEquals(List.of(range(0, 0), range(2, 2)), describe(change.getFreed()));
+        assertEquals(List.of(), describe(change.getTaken()));
+    }
+
+    @Test
+    public void testChangeOf_WithTwoSpotsPerNight_ShouldOnlyReportNightsThatFilledUpOrOpenedUp() {
+        withSpotsPerNight(2);
+
+        AvailabilityChangeDTO first = apply(ReservationChangedEvent.reserved(1L, 1L, day, day.plusDays(2)));
+        AvailabilityChangeDTO second = apply(ReservationChangedEvent.reserved(2L, 1L, day.plusDays(1), day.plusDays(3)));
+
+        assertEquals(List.of(), describe(first.getTaken()));
+        assertEquals(List.of(range(1, 2)), describe(second.getTaken()));
+
+        AvailabilityChangeDTO cancelled = apply(ReservationChangedEvent.cancelled(1L, 1L, day, day.plusDays(2)));
+
+        assertEquals(List.of(range(1, 2)), describe(cancelled.getFreed()));
+        assertEquals(List.of(), describe(cancelled.getTaken()));
+    }
+
+    private void withSpotsPerNight(int spotsPerNight) {
+        ReservationRepository reservationRepository = mock(ReservationRepository.class);
+        when(reservationRepository.findDateRangesByEndDateGreaterThanEqual(any())).thenReturn(List.of());
+        dayOccupancyIndex = new DayOccupancyIndex(reservationRepository, new CampsiteSites(1, spotsPerNight), 200);
+        dayOccupancyIndex.rebuild();
+        availabilityChangeBroadcaster = new AvailabilityChangeBroadcaster(new ObjectMapper(), dayOccupancyIndex, 1000, 64, 1);
+    }
+
+    //The index applies a change before the broadcaster publishes it
+    private AvailabilityChangeDTO apply(ReservationChangedEvent event) {
+        dayOccupancyIndex.onReservationChanged(event);
+        return availabilityChangeBroadcaster.changeOf(event);
+    }
+
+    private String range(int fromOffset, int toOffset) {
+        return day.plusDays(fromOffset) + ".." + day.plusDays(toOffset);
+    }
+
+    private static List<String> describe(List<AvailabilityIntervalDTO> intervals) {
+        return intervals.stream().map(interval -> interval.getFrom() + ".." + interval.getTo()).toList();
+    }
+}
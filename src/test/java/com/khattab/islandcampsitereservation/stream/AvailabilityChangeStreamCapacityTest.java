@@ -0,0 +1,95 @@
+package com.khattab.islandcampsitereservation.stream;
+
+import com.khattab.islandcampsitereservation.dto.ReservationDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//A database of its own, so the second spot per night never reaches tests that expect one
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.config.location=classpath:/embedded-h2.properties",
+                "spring.main.web-application-type=servlet",
+                "spring.datasource.url=jdbc:h2:mem:capacity-stream;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "campsite.spots-per-night=2"})
+public class AvailabilityChangeStreamCapacityTest {
+
+    private final LocalDate night = LocalDate.now().plusDays(10);
+    private final ExecutorService streamReader = Executors.newSingleThreadExecutor();
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Autowired
+    private AvailabilityChangeBroadcaster availabilityChangeBroadcaster;
+
+    @AfterEach
+    void closeStream() {
+        streamReader.shutdownNow();
+    }
+
+    @Test
+    public void testWithTwoSpotsPerNight_ShouldOnlyStreamNightsThatFilledUpOrOpenedUp() throws Exception {
+        BlockingQueue<String> changes = subscribe();
+
+        ReservationDTO first = reserve("John Doe");
+        reserve("Jane Smith");
+        //The first booking left a spot, so the first delta is the second booking filling the night
+        assertEquals(String.format("{\"siteId\":1,\"freed\":[],\"taken\":[{\"from\":\"%s\",\"to\":\"%s\"}]}", night, night),
+                changes.poll(5, TimeUnit.SECONDS));
+
+        restTemplate.delete("/campsite/reservation/" + first.getId());
+        assertEquals(String.format("{\"siteId\":1,\"freed\":[{\"from\":\"%s\",\"to\":\"%s\"}],\"taken\":[]}", night, night),
+                changes.poll(5, TimeUnit.SECONDS));
+    }
+
+    private BlockingQueue<String> subscribe() throws InterruptedException {
+        BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/campsite/availability/stream"))
+                                         .header("Accept", "text/event-stream")
+                                         .build();
+        streamReader.execute(() -> {
+            try {
+                HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofLines()).body()
+                          .filter(line -> line.startsWith("data:"))
+                          .forEach(line -> changes.add(line.substring("data:".length())));
+            } catch (Exception ex) {
+                //The stream ends with the test
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (availabilityChangeBroadcaster.getSubscriberCount() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(1, availabilityChangeBroadcaster.getSubscriberCount());
+        return changes;
+    }
+
+    private ReservationDTO reserve(String camperFullName) {
+        ResponseEntity<ReservationDTO> response = restTemplate.postForEntity("/campsite/reservation", ReservationDTO.builder()
+                                                                                                              .camperFullName(camperFullName)
+                                                                                                              .camperEmail("camper@example.com")
+                                                                                                              .startDate(night)
+                                                                                                              .endDate(night)
+                                                                                                              .build(), ReservationDTO.class);
+        assertEquals(HttpStatus.OK, HttpStatus.valueOf(response.getStatusCode().value()));
+        return response.getBody();
+    }
+}
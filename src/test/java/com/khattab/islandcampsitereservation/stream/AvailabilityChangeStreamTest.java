@@ -0,0 +1,92 @@
+package com.khattab.islandcampsitereservation.stream;
+
+import com.khattab.islandcampsitereservation.event.ReservationChangedEvent;
+import com.khattab.islandcampsitereservation.occupancy.DayOccupancyIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Subscribers that stop reading leave their event writes blocked on a full socket; requests must still be served.
+//Pending events are not capped here, so every stalled subscriber keeps a write blocked instead of being disconnected
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"campsite.virtual-threads.enabled=true", "campsite.availability.stream.max-pending-events=1000000"})
+public class AvailabilityChangeStreamTest {
+
+    private final LocalDate day = LocalDate.now().plusDays(2);
+    private final List<Socket> stalledClients = new ArrayList<>();
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Autowired
+    private AvailabilityChangeBroadcaster availabilityChangeBroadcaster;
+    @Autowired
+    private DayOccupancyIndex dayOccupancyIndex;
+
+    @AfterEach
+    void closeClients() throws IOException {
+        for (Socket client : stalledClients)
+            client.close();
+    }
+
+    @Test
+    public void testSubscribersThatStopReading_ShouldNotStallRequestHandling() throws Exception {
+        //More than the 256 carriers the JDK adds for virtual threads blocked while pinned
+        int stalledCount = 300;
+        for (int i = 0; i < stalledCount; i++)
+            stalledClients.add(subscribeWithoutReading());
+        awaitSubscriberCount(stalledCount);
+
+        //Far more than the socket buffers hold, so every drain ends up blocked in a write. The nights are filled and freed
+        //in turn, so every change is published
+        for (int i = 0; i < 30_000; i++) {
+            ReservationChangedEvent event = i % 2 == 0
+                    ? ReservationChangedEvent.reserved(1L, 1L, day, day.plusDays(2))
+                    : ReservationChangedEvent.cancelled(1L, 1L, day, day.plusDays(2));
+            dayOccupancyIndex.onReservationChanged(event);
+            availabilityChangeBroadcaster.onReservationChanged(event);
+        }
+        Thread.sleep(1000);
+
+        HttpStatus status = CompletableFuture.supplyAsync(() -> HttpStatus.valueOf(
+                        restTemplate.getForEntity("/campsite/availability", String.class).getStatusCode().value()))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.OK, status);
+    }
+
+    private Socket subscribeWithoutReading() throws IOException {
+        Socket client = new Socket();
+        client.setReceiveBufferSize(1024);
+        client.connect(new InetSocketAddress("localhost", port));
+        OutputStream request = client.getOutputStream();
+        request.write(("GET /campsite/availability/stream HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        request.flush();
+        return client;
+    }
+
+    private void awaitSubscriberCount(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (availabilityChangeBroadcaster.getSubscriberCount() < count && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, availabilityChangeBroadcaster.getSubscriberCount());
+    }
+}